@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.slave.host.ClassSupplier;
+import safeNativeCode.slave.host.ProcessSlave;
+import safeNativeCode.slave.process.ProcessClassloader;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to supply a class to a slave, both for the host to find its bytecode and for a slave to fetch and define it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ClassSupplyBenchmark {
+    private static final String LOADED = Loaded.class.getName();
+
+    private ClassSupplier supplier;
+    private ProcessSlave slave;
+
+    @Setup
+    public void start() {
+        supplier = new ClassSupplier(new LinkedHashSet<>(Collections.singleton(ClassLoader.getSystemClassLoader())));
+        slave = new ProcessSlave();
+    }
+
+    @TearDown
+    public void stop() {
+        slave.terminate();
+    }
+
+    /**
+     * Find the bytecode of a class and the rest of its package, as the host does for every request from a slave
+     */
+    @Benchmark
+    public byte[] supply() {
+        return supplier.getPackageByteCode(LOADED);
+    }
+
+    /**
+     * Load a class on the slave with a new ProcessClassloader, so that it is fetched from the host and defined every time
+     */
+    @Benchmark
+    public void fetch() {
+        String name = LOADED;
+        slave.run(() -> new ProcessClassloader(ClassLoader.getSystemClassLoader().getParent()).loadClass(name));
+    }
+
+    public static class Loaded {
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.slave.host.DockerRuntime;
+import safeNativeCode.slave.host.DockerSlave;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to start a DockerSlave and make its first call, and to terminate it, with and without containers created
+ * ahead of time. The image is pulled once per fork, before the first measurement.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DockerBenchmark {
+    @Param({"0", "1"})
+    public int poolSize;
+
+    private DockerSlave started;
+
+    @Setup
+    public void configure() {
+        DockerRuntime.setPoolSize(poolSize);
+    }
+
+    @TearDown(Level.Invocation)
+    public void stop() {
+        if (started != null) {
+            started.terminate();
+            started = null;
+        }
+    }
+
+    @Benchmark
+    public int start() throws RemoteException {
+        started = new DockerSlave();
+        return started.call(() -> 1).get();
+    }
+
+    @Benchmark
+    public void terminate(Running running) {
+        running.slave.terminate();
+    }
+
+    @State(Scope.Thread)
+    public static class Running {
+        DockerSlave slave;
+
+        @Setup(Level.Invocation)
+        public void start() throws RemoteException {
+            slave = new DockerSlave();
+            slave.call(() -> 1);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.SafeClassLoader;
+import safeNativeCode.preloader.Allowlist;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long SafeClassLoader takes to secure itself, either by preloading the whole classpath or by loading an allowlist
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PreloadBenchmark {
+    @Param({"preload", "allowlist"})
+    public String mode;
+
+    @Setup
+    public void start() throws IOException {
+        if (mode.equals("allowlist")) {
+            File allowlist = File.createTempFile("safeNativeCode", ".allowlist");
+            allowlist.deleteOnExit();
+            Allowlist.main(new String[]{allowlist.getPath()});
+            System.setProperty("safeNativeCode.allowlist", allowlist.getPath());
+        } else {
+            System.clearProperty("safeNativeCode.allowlist");
+        }
+    }
+
+    /**
+     * Load a class with a new SafeClassLoader, which secures itself before loading its first class
+     */
+    @Benchmark
+    public Class<?> secure() throws ClassNotFoundException {
+        return new SafeClassLoader(ClassLoader.getSystemClassLoader()).loadClass(ClassSupplyBenchmark.Loaded.class.getName());
+    }
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.slave.RemoteObject;
+import safeNativeCode.slave.host.ProcessSlave;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How quickly objects stored on a slave can be fetched by the host, or copied to another slave
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RemoteObjectBenchmark {
+    @Param({"rmi", "unix"})
+    public String transport;
+
+    @Param({"16", "1024", "65536"})
+    public int size;
+
+    private ProcessSlave source;
+    private ProcessSlave target;
+    private RemoteObject<byte[]> object;
+
+    @Setup
+    public void start() throws RemoteException {
+        source = Slaves.start(transport);
+        target = Slaves.start(transport);
+        int size = this.size;
+        object = source.call(() -> new byte[size]);
+    }
+
+    //Copies are stored on the target, so they are removed between iterations.
+    @TearDown(Level.Iteration)
+    public void clear() throws RemoteException {
+        target.clear();
+    }
+
+    @TearDown
+    public void stop() {
+        source.terminate();
+        target.terminate();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public byte[] get() throws RemoteException {
+        return object.get();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public RemoteObject<byte[]> copyTo() throws RemoteException {
+        return object.copyTo(target);
+    }
+}
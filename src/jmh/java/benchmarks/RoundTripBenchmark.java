@@ -0,0 +1,95 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.slave.RemoteObject;
+import safeNativeCode.slave.host.ProcessSlave;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long a call takes from the host to a slave and back, with a payload of several sizes sent along with it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+    @Param({"rmi", "unix"})
+    public String transport;
+
+    @Param({"0", "1024", "65536"})
+    public int payloadSize;
+
+    private ProcessSlave slave;
+    private byte[] payload;
+    private RemoteObject<byte[]> stored;
+
+    @Setup
+    public void start() {
+        slave = Slaves.start(transport);
+        payload = new byte[payloadSize];
+    }
+
+    @Setup(Level.Iteration)
+    public void store() throws RemoteException {
+        int size = payloadSize;
+        stored = slave.call(() -> new byte[size]);
+    }
+
+    //Calls store their result on the slave, so they are removed between iterations.
+    @TearDown(Level.Iteration)
+    public void clear() throws RemoteException {
+        slave.clear();
+    }
+
+    @TearDown
+    public void stop() {
+        slave.terminate();
+    }
+
+    /**
+     * Run a lambda holding the payload
+     */
+    @Benchmark
+    public void run() {
+        byte[] payload = this.payload;
+        slave.run(() -> touch(payload));
+    }
+
+    /**
+     * Call a lambda holding the payload on an object stored on the slave, storing the result there
+     */
+    @Benchmark
+    public RemoteObject<Integer> call() throws RemoteException {
+        byte[] payload = this.payload;
+        return slave.call(stored, b -> {
+            return b.length + payload.length;
+        });
+    }
+
+    /**
+     * Fetch a payload stored on the slave
+     */
+    @Benchmark
+    public byte[] fetch() throws RemoteException {
+        return stored.get();
+    }
+
+    private static void touch(byte[] payload) {
+    }
+}
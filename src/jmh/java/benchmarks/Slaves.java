@@ -0,0 +1,27 @@
+package benchmarks;
+
+import safeNativeCode.slave.host.ProcessSlave;
+import safeNativeCode.slave.transport.RmiTransport;
+import safeNativeCode.slave.transport.UnixSocketTransport;
+
+/**
+ * Starts the slaves used by the benchmarks
+ */
+class Slaves {
+    /**
+     * Start a slave in another process
+     *
+     * @param transport "rmi" or "unix", the transport to communicate with the slave over
+     * @return the started slave
+     */
+    static ProcessSlave start(String transport) {
+        switch (transport) {
+            case "rmi":
+                return new ProcessSlave(0, new String[]{}, new RmiTransport());
+            case "unix":
+                return new ProcessSlave(0, new String[]{}, new UnixSocketTransport());
+            default:
+                throw new IllegalArgumentException("Unknown transport " + transport);
+        }
+    }
+}
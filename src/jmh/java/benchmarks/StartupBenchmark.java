@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import safeNativeCode.slave.host.ProcessSlave;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to start a ProcessSlave and make its first call, either as the first slave of a new host JVM, or once the
+ * host has already started slaves and served them classes
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StartupBenchmark {
+    @Benchmark
+    @Fork(10)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 1)
+    public int cold() throws RemoteException {
+        return startAndCall();
+    }
+
+    @Benchmark
+    @Fork(1)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 10)
+    public int warm() throws RemoteException {
+        return startAndCall();
+    }
+
+    private static int startAndCall() throws RemoteException {
+        ProcessSlave slave = new ProcessSlave();
+        try {
+            return slave.call(() -> 1).get();
+        } finally {
+            slave.terminate();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package safeNativeCode;
 
 import com.sun.jna.Native;
 import safeNativeCode.exceptions.ClassLoadingDisabledException;
+import safeNativeCode.preloader.Allowlist;
 import safeNativeCode.preloader.ClassPreloader;
 import safeNativeCode.utils.Utils;
 
@@ -10,15 +11,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static safeNativeCode.utils.Utils.*;
 
 
 public class SafeClassLoader extends ClassLoader {
-    private boolean secure;
-    private boolean securing = false;
+    static {
+        //Classes are preloaded on several threads at once, so lock per class rather than on the whole classloader.
+        registerAsParallelCapable();
+    }
+
+    private volatile boolean secure;
+    private volatile Allowlist allowlist;
+    private final AtomicBoolean securing = new AtomicBoolean(false);
 
     public SafeClassLoader(ClassLoader parent) {
         super(parent);
@@ -43,7 +52,24 @@ public class SafeClassLoader extends ClassLoader {
         if (isWindows()) {
             System.err.println("You appear to be using windows. We cannot guarantee the security of windows when using this program.");
         }
-        new ClassPreloader().preload(this, loaded);
+        String allowlistFile = System.getProperty("safeNativeCode.allowlist");
+        if (allowlistFile != null) {
+            //Instead of loading every class now, only allow classes from the allowlist generated at build time to be loaded later.
+            long start = System.nanoTime();
+            try {
+                allowlist = Allowlist.load(Paths.get(allowlistFile), System.getProperty("safeNativeCode.allowlistDigest"));
+            } catch (IOException | SecurityException e) {
+                System.err.println("Unable to load the class allowlist: " + e.getLocalizedMessage());
+                System.exit(1);
+            }
+            //The exception must already be loaded before sealing, or it could not be thrown for classes outside the allowlist.
+            getDisabledException();
+            System.out.println("Loaded an allowlist of " + allowlist.size() + " classes in " + (System.nanoTime() - start) / 1000000 + "ms" + describeMetaspaceUsage() + ".");
+        } else {
+            new ClassPreloader().preload(this, loaded, preloaded);
+            //Only seal once every preloading thread has finished.
+            preloaded.clear();
+        }
         secure = true;
     }
 
@@ -57,7 +83,9 @@ public class SafeClassLoader extends ClassLoader {
         public static native int prctl(int option, long arg2);
     }
 
-    private Set<String> loaded = new HashSet<>();
+    private Set<String> loaded = ConcurrentHashMap.newKeySet();
+    //Bytecode read ahead of time by the preloader, removed once the class is defined.
+    private Map<String, byte[]> preloaded = new ConcurrentHashMap<>();
     private ClassNotFoundException disabled;
 
     //We can't just throw a ClassLoadingDisabledException, since we need the exception to be loaded using this classloader. Load it again.
@@ -74,34 +102,43 @@ public class SafeClassLoader extends ClassLoader {
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
-        if (!securing) {
+        if (securing.compareAndSet(false, true)) {
             loaded.add(name);
-            securing = true;
             preload();
         }
-        Class<?> c = findLoadedClass(name);
-        if (c != null) {
-            return c;
-        }
-        //Skip specific junit classes that don't correctly handle reloading, or java classes.
-        //Junit classes are only ignored when -Dtesting=true is passed as an argument however,
-        if (Utils.isTestingClass(name) || Utils.isJavaClass(name)) {
-            return super.loadClass(name);
-        }
-        if (secure && !loaded.contains(name)) {
-            throw getDisabledException();
-        }
-        try {
-            String className = name.replace(".", File.separator) + ".class";
-            InputStream is = getResourceAsStream(className);
-            if (is == null) {
-                throw new ClassNotFoundException("Unable to find: " + name);
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c != null) {
+                return c;
+            }
+            //Skip specific junit classes that don't correctly handle reloading, or java classes.
+            //Junit classes are only ignored when -Dtesting=true is passed as an argument however,
+            if (Utils.isTestingClass(name) || Utils.isJavaClass(name)) {
+                return super.loadClass(name);
+            }
+            if (secure && allowlist == null && !loaded.contains(name)) {
+                throw getDisabledException();
+            }
+            byte[] b = preloaded.remove(name);
+            if (b != null) {
+                return super.defineClass(name, b, 0, b.length);
+            }
+            try {
+                String className = name.replace(".", File.separator) + ".class";
+                InputStream is = getResourceAsStream(className);
+                if (is == null) {
+                    throw new ClassNotFoundException("Unable to find: " + name);
+                }
+                b = Utils.readStream(is);
+                //With an allowlist, classes are only checked once their bytecode is known.
+                if (secure && allowlist != null && !allowlist.permits(name, b)) {
+                    throw getDisabledException();
+                }
+                return super.defineClass(name, b, 0, b.length);
+            } catch (IOException e) {
+                // If we lose connection to the main JVM, just throw a class not found exception.
+                throw new ClassNotFoundException("Unable to load: " + name, e);
             }
-            byte[] b = Utils.readStream(is);
-            return super.defineClass(name, b, 0, b.length);
-        } catch (IOException e) {
-            // If we lose connection to the main JVM, just throw a class not found exception.
-            throw new ClassNotFoundException("Unable to load: " + name, e);
         }
     }
 }
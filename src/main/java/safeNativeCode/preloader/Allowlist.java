@@ -0,0 +1,118 @@
+package safeNativeCode.preloader;
+
+import safeNativeCode.utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Allowlist is the set of classes SafeClassLoader may define, along with the SHA-256 digest of the bytecode of each class.
+ * It is generated at build time by the classAllowlist gradle task, and used instead of preloading every class when the
+ * safeNativeCode.allowlist property names the file it was written to.
+ * If the safeNativeCode.allowlistDigest property is set, the allowlist file itself must have that SHA-256 digest.
+ */
+public class Allowlist {
+    private final Map<String, String> digests;
+
+    private Allowlist(Map<String, String> digests) {
+        this.digests = digests;
+    }
+
+    /**
+     * Read an allowlist
+     *
+     * @param file           the allowlist file
+     * @param expectedDigest the SHA-256 digest the file must have, or null to accept any file
+     * @return the allowlist
+     * @throws IOException       the file could not be read
+     * @throws SecurityException the file does not have the expected digest
+     */
+    public static Allowlist load(Path file, String expectedDigest) throws IOException {
+        byte[] contents = Files.readAllBytes(file);
+        if (expectedDigest != null && !expectedDigest.equalsIgnoreCase(digest(contents))) {
+            throw new SecurityException("Allowlist " + file + " does not match the expected digest");
+        }
+        Map<String, String> digests = new HashMap<>();
+        for (String line : new String(contents, StandardCharsets.UTF_8).split("\n")) {
+            int split = line.indexOf(' ');
+            if (!line.startsWith("#") && split != -1) {
+                digests.put(line.substring(split + 1).trim(), line.substring(0, split));
+            }
+        }
+        return new Allowlist(digests);
+    }
+
+    /**
+     * Check if a class may be defined
+     *
+     * @param name     the name of the class
+     * @param bytecode the bytecode the class would be defined from
+     * @return true if the class is in the allowlist and its bytecode has not changed since the allowlist was generated
+     */
+    public boolean permits(String name, byte[] bytecode) {
+        String expected = digests.get(name);
+        return expected != null && expected.equals(digest(bytecode));
+    }
+
+    /**
+     * @return the amount of classes in the allowlist
+     */
+    public int size() {
+        return digests.size();
+    }
+
+    private static String digest(byte[] data) {
+        try {
+            StringBuilder hex = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //Every Java platform is required to support SHA-256.
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Generate an allowlist for every class on the classpath, as it would be seen by SafeClassLoader
+     *
+     * @param args the file to write the allowlist to
+     */
+    public static void main(String[] args) throws IOException {
+        Path output = Paths.get(args[0]);
+        List<String> names = new ArrayList<>();
+        new ClassPathProcessor().handle(classFile -> {
+            synchronized (names) {
+                names.add(classFile.getClassName());
+            }
+        });
+        Map<String, String> digests = new TreeMap<>();
+        for (String name : names) {
+            //Read classes the same way SafeClassLoader does, so that the first class on the classpath with a name wins.
+            try (InputStream is = ClassLoader.getSystemClassLoader().getResourceAsStream(name.replace(".", File.separator) + ".class")) {
+                if (is != null && !Utils.isJavaClass(name)) {
+                    digests.put(name, digest(Utils.readStream(is)));
+                }
+            }
+        }
+        StringBuilder contents = new StringBuilder("# SafeClassLoader allowlist, generated by the classAllowlist task\n");
+        digests.forEach((name, digest) -> contents.append(digest).append(' ').append(name).append('\n'));
+        byte[] bytes = contents.toString().getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Files.write(output, bytes);
+        System.out.println("Wrote " + digests.size() + " classes to " + output + ", digest " + digest(bytes));
+    }
+}
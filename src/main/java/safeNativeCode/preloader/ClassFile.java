@@ -9,6 +9,10 @@ class ClassFile {
         this.fileName = fileName;
     }
 
+    String getFileName(){
+        return fileName;
+    }
+
     String getClassName(){
         return fileName.substring(0, fileName.lastIndexOf(".class")).replace(File.separator, ".");
     }
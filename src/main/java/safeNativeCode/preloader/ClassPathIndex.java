@@ -0,0 +1,200 @@
+package safeNativeCode.preloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * ClassPathIndex remembers the class files found in each jar on the classpath between runs, so that only jars that have changed
+ * need to be opened again. A jar is identified by its path, size and modification time.
+ * Directories are always scanned, since finding out if anything inside them has changed means walking them anyway.
+ * The index is stored in the file named by the safeNativeCode.preloadIndex property, or in the user's cache directory by default.
+ * Since the index decides which classes are loaded, an index that other users could have written is ignored.
+ * Elements may be handled from several threads at once.
+ */
+class ClassPathIndex {
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Entry> used = new HashMap<>();
+    private boolean changed = false;
+    private int hits = 0;
+
+    private ClassPathIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the index, an empty index is returned if it does not exist or can't be read
+     */
+    static ClassPathIndex load() {
+        String location = System.getProperty("safeNativeCode.preloadIndex");
+        ClassPathIndex index = new ClassPathIndex(location == null ? getCacheDirectory().resolve("preload.index") : Paths.get(location));
+        if (Files.isRegularFile(index.file, LinkOption.NOFOLLOW_LINKS) && isPrivate(index.file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index.file)))) {
+                if (in.readInt() == VERSION) {
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        String path = in.readUTF();
+                        long size = in.readLong();
+                        long modified = in.readLong();
+                        byte[] files = new byte[in.readInt()];
+                        in.readFully(files);
+                        index.entries.put(path, new Entry(size, modified, split(files)));
+                    }
+                }
+            } catch (IOException e) {
+                //A corrupt index is rebuilt from scratch.
+                index.entries.clear();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return $XDG_CACHE_HOME/safeNativeCode, or ~/.cache/safeNativeCode if it is not set
+     */
+    private static Path getCacheDirectory() {
+        String cache = System.getenv("XDG_CACHE_HOME");
+        Path base = cache == null || cache.isEmpty() ? Paths.get(System.getProperty("user.home"), ".cache") : Paths.get(cache);
+        return base.resolve("safeNativeCode");
+    }
+
+    /**
+     * @return true if the file belongs to the user running this process, and nobody else may write to it or its directory
+     */
+    private static boolean isPrivate(Path file) {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) return true;
+        try {
+            String user = System.getProperty("user.name");
+            for (Path path : new Path[]{file, file.toAbsolutePath().getParent()}) {
+                if (!Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).getName().equals(user)) return false;
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+                if (permissions.contains(PosixFilePermission.GROUP_WRITE) || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Visit the class files in a classpath element, using the index if the element has not changed
+     *
+     * @param path     the location of the element
+     * @param element  the element, used to find its class files if the index can't be used
+     * @param consumer called with each class file
+     */
+    void handle(File path, ClassPathElement element, Consumer<ClassFile> consumer) {
+        if (!path.isFile()) {
+            element.handle(consumer);
+            return;
+        }
+        String key = path.getAbsolutePath();
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.size == path.length() && entry.modified == path.lastModified()) {
+            synchronized (this) {
+                hits++;
+            }
+        } else {
+            //Elements are scanned in parallel, so only hold the lock while updating the index.
+            List<String> files = new ArrayList<>();
+            element.handle(classFile -> files.add(classFile.getFileName()));
+            entry = new Entry(path.length(), path.lastModified(), files);
+            synchronized (this) {
+                changed = true;
+            }
+        }
+        synchronized (this) {
+            used.put(key, entry);
+        }
+        entry.files.forEach(name -> consumer.accept(new ClassFile(name)));
+    }
+
+    /**
+     * @return the amount of elements that were read from the index
+     */
+    synchronized int getHits() {
+        return hits;
+    }
+
+    /**
+     * Write the index if anything has changed, only keeping the elements that were on the classpath this time
+     */
+    synchronized void save() {
+        if (!changed && used.size() == entries.size()) return;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+                if (!Files.isDirectory(directory)) {
+                    Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                }
+                //An index in a directory others can write to could be swapped for theirs, so it would be ignored anyway.
+                if (!isPrivate(directory)) return;
+            } else {
+                Files.createDirectories(directory);
+            }
+            //Temporary files are only readable and writable by their owner.
+            Path temp = Files.createTempFile(directory, "safeNativeCode", ".index");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(VERSION);
+                out.writeInt(used.size());
+                for (Map.Entry<String, Entry> e : used.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().size);
+                    out.writeLong(e.getValue().modified);
+                    //The names of the files are stored as a single block, which is much faster to read than a string per file.
+                    byte[] files = String.join("\n", e.getValue().files).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(files.length);
+                    out.write(files);
+                }
+            }
+            //Replace the index in one step, so that other processes never see a partially written index.
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            //The index is only an optimisation, the classpath is scanned again next time.
+        }
+    }
+
+    private static List<String> split(byte[] files) {
+        return files.length == 0 ? Collections.emptyList() : Arrays.asList(new String(files, StandardCharsets.UTF_8).split("\n"));
+    }
+
+    private static class Entry {
+        final long size;
+        final long modified;
+        final List<String> files;
+
+        Entry(long size, long modified, List<String> files) {
+            this.size = size;
+            this.modified = modified;
+            this.files = files;
+        }
+    }
+}
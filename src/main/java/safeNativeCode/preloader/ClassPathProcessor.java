@@ -5,11 +5,28 @@ import java.util.Arrays;
 import java.util.function.Consumer;
 
 class ClassPathProcessor {
+    private int indexHits = 0;
+
+    /**
+     * Visit every class file on the classpath. Classpath elements are scanned in parallel, so consumer must be safe to call
+     * from several threads at once.
+     */
     void handle(Consumer<ClassFile> consumer) {
+        ClassPathIndex index = ClassPathIndex.load();
         Arrays
                 .stream(System.getProperty("java.class.path").split(":"))
                 .map(s -> new File(s).toURI())
                 .distinct()
-                .forEach(element -> new ClassPathElement(element).handle(consumer));
+                .parallel()
+                .forEach(element -> index.handle(new File(element), new ClassPathElement(element), consumer));
+        index.save();
+        indexHits = index.getHits();
+    }
+
+    /**
+     * @return the amount of jars whose contents were taken from the index during the last call to handle
+     */
+    int getIndexHits() {
+        return indexHits;
     }
 }
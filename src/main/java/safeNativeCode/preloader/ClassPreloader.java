@@ -1,10 +1,28 @@
 package safeNativeCode.preloader;
 
 import safeNativeCode.SafeClassLoader;
+import safeNativeCode.utils.Utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * ClassPreloader loads every class on the classpath. Loading is split into three stages that run at the same time, each with its
+ * own threads: the classpath is scanned for class names, the bytecode for each class is read, and then each class is defined.
+ * Once every class has been defined, the classes are initialized one at a time.
+ */
 public class ClassPreloader {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
     private ClassPathProcessor processor;
     private Set<String> loadedClasses;
 
@@ -13,23 +31,83 @@ public class ClassPreloader {
         processor = new ClassPathProcessor();
     }
 
-    public void preload(SafeClassLoader safeCodeLibrary, Set<String> loaded) {
+    /**
+     * Load every class on the classpath, returning once all of them have been loaded
+     *
+     * @param safeCodeLibrary the classloader to load classes with
+     * @param loaded          the names of the classes that have been loaded, which must be safe to use from several threads
+     * @param bytecode        where bytecode that has been read is stored until safeCodeLibrary defines the class
+     */
+    public void preload(SafeClassLoader safeCodeLibrary, Set<String> loaded, Map<String, byte[]> bytecode) {
         this.loadedClasses = loaded;
-        //Load all classes that the processor visits.
+        long start = System.nanoTime();
+        ExecutorService readers = Executors.newFixedThreadPool(THREADS, daemonThreads("ClassPreloader-reader"));
+        ExecutorService definers = Executors.newFixedThreadPool(THREADS, daemonThreads("ClassPreloader-definer"));
+        Queue<Class<?>> defined = new ConcurrentLinkedQueue<>();
+        //Scan every classpath element at once, handing each class to the next stage.
         processor.handle(classFile -> {
             String className = classFile.getClassName();
-            if (!loadedClasses.contains(className)) {
-                loadedClasses.add(className);
-                //Try and load classes. Some classes will fail, this is normal as some libraries specify optional
-                //dependencies that we do not actually have.
-                try {
-                    Class.forName(className, true, safeCodeLibrary);
-                } catch (ClassNotFoundException | NoClassDefFoundError e) {
-                }
+            if (loadedClasses.add(className)) {
+                readers.execute(() -> {
+                    byte[] b = read(safeCodeLibrary, className);
+                    if (b != null) {
+                        bytecode.putIfAbsent(className, b);
+                    }
+                    definers.execute(() -> {
+                        //Try and load classes. Some classes will fail, this is normal as some libraries specify optional
+                        //dependencies that we do not actually have.
+                        try {
+                            //Classes are initialized later, since initializers running on several threads can deadlock on each other.
+                            defined.add(Class.forName(className, false, safeCodeLibrary));
+                        } catch (ClassNotFoundException | LinkageError e) {
+                        }
+                    });
+                });
             }
         });
-        System.out.println("Preloaded " + loadedClasses.size() + " classes.");
+        //Every stage only hands work to later stages, so each one can be finished in order.
+        await(readers);
+        await(definers);
+        //Initializers may load classes of their own, which have to be loaded before the classloader is sealed.
+        for (Class<?> c : defined) {
+            try {
+                Class.forName(c.getName(), true, safeCodeLibrary);
+            } catch (ClassNotFoundException | LinkageError e) {
+            }
+        }
+        System.out.println("Preloaded " + loadedClasses.size() + " classes in " + (System.nanoTime() - start) / 1000000 + "ms, " + processor.getIndexHits() + " jars were indexed" + Utils.describeMetaspaceUsage() + ".");
     }
-}
 
+    private static byte[] read(SafeClassLoader safeCodeLibrary, String className) {
+        try (InputStream is = safeCodeLibrary.getResourceAsStream(className.replace(".", File.separator) + ".class")) {
+            return is == null ? null : Utils.readStream(is);
+        } catch (IOException e) {
+            //The class is read again when it is defined, which reports the error.
+            return null;
+        }
+    }
 
+    private static void await(ExecutorService executor) {
+        executor.shutdown();
+        boolean interrupted = false;
+        //Keep waiting even if interrupted, the classloader must not be sealed while classes are still being loaded.
+        while (!executor.isTerminated()) {
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -42,4 +42,17 @@ public interface InternalSlave extends Remote {
     <T> T get(RemoteObject<T> obj) throws RemoteException, UnknownObjectException;
 
     void remove(RemoteObject obj) throws RemoteException, UnknownObjectException;
+
+    /**
+     * Delete every object stored on the slave, leaving it as it was when it was started
+     */
+    void clear() throws RemoteException;
+
+    /**
+     * Execute the steps of a pipeline in order, keeping only the results that are marked to be fetched or kept
+     *
+     * @param steps the steps to execute
+     * @return for every step either the fetched value, the remote object holding the kept value, or null
+     */
+    Object[] runPipeline(Pipeline.Step[] steps) throws RemoteException;
 }
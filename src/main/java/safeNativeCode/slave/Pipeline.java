@@ -0,0 +1,272 @@
+package safeNativeCode.slave;
+
+import java.io.Serializable;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Pipeline records a chain of functions to execute on a slave, and then sends them all to the slave in a single call.
+ * Every function may use the results of functions recorded before it, along with objects that are already stored on the slave.
+ * Results are only kept on the slave or sent back if they are asked for with {@link #keep(Value)} or {@link #fetch(Value)},
+ * every other result is discarded once the pipeline has finished.
+ */
+public class Pipeline {
+    private final InternalSlave slave;
+    private final List<Step> steps = new ArrayList<>();
+    private final List<Value<?>> values = new ArrayList<>();
+    private boolean executed = false;
+
+    /**
+     * Create a pipeline, this is usually done with {@link Slave#pipeline()}
+     *
+     * @param slave the slave to execute the pipeline on
+     */
+    public Pipeline(InternalSlave slave) {
+        this.slave = slave;
+    }
+
+    /**
+     * Use an object that is already stored on the slave in this pipeline
+     *
+     * @param obj the remote object
+     * @return a value that can be passed to later functions
+     */
+    public <T> Value<T> of(RemoteObject<T> obj) {
+        return new Value<>(this, -1, obj);
+    }
+
+    /**
+     * Mark a value to be sent back once the pipeline has been executed, so that it can be read with {@link Value#get()}
+     *
+     * @param value the value to send back
+     * @return the value
+     */
+    public <T> Value<T> fetch(Value<T> value) {
+        step(value).output = Step.FETCH;
+        return value;
+    }
+
+    /**
+     * Mark a value to be kept on the slave once the pipeline has been executed, so that it can be used with {@link Value#getRemote()}
+     *
+     * @param value the value to keep
+     * @return the value
+     */
+    public <T> Value<T> keep(Value<T> value) {
+        step(value).output = Step.KEEP;
+        return value;
+    }
+
+    public void run(Functions.Runnable lambda) {
+        add(lambda);
+    }
+
+    public <T> void run(Value<T> obj, Functions.Consumer<T> lambda) {
+        add(lambda, obj);
+    }
+
+    public <R> Value<R> call(Functions.Supplier<R> lambda) {
+        return add(lambda);
+    }
+
+    public <R, T> Value<R> call(Value<T> t, Functions.Function<R, T> lambda) {
+        return add(lambda, t);
+    }
+
+    public <R, T1, T2> Value<R> call(Value<T1> t1, Value<T2> t2, Functions.BiFunction<R, T1, T2> lambda) {
+        return add(lambda, t1, t2);
+    }
+
+    public <R, T1, T2, T3> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Functions.TriFunction<R, T1, T2, T3> lambda) {
+        return add(lambda, t1, t2, t3);
+    }
+
+    public <R, T1, T2, T3, T4> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Functions.QuadFunction<R, T1, T2, T3, T4> lambda) {
+        return add(lambda, t1, t2, t3, t4);
+    }
+
+    public <R, T1, T2, T3, T4, T5> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Functions.FiveFunction<R, T1, T2, T3, T4, T5> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5);
+    }
+
+    public <R, T1, T2, T3, T4, T5, T6> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Value<T6> t6, Functions.SixFunction<R, T1, T2, T3, T4, T5, T6> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5, t6);
+    }
+
+    public <R, T1, T2, T3, T4, T5, T6, T7> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Value<T6> t6, Value<T7> t7, Functions.SevenFunction<R, T1, T2, T3, T4, T5, T6, T7> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5, t6, t7);
+    }
+
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Value<T6> t6, Value<T7> t7, Value<T8> t8, Functions.EightFunction<R, T1, T2, T3, T4, T5, T6, T7, T8> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5, t6, t7, t8);
+    }
+
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Value<T6> t6, Value<T7> t7, Value<T8> t8, Value<T9> t9, Functions.NineFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5, t6, t7, t8, t9);
+    }
+
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> Value<R> call(Value<T1> t1, Value<T2> t2, Value<T3> t3, Value<T4> t4, Value<T5> t5, Value<T6> t6, Value<T7> t7, Value<T8> t8, Value<T9> t9, Value<T10> t10, Functions.TenFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> lambda) {
+        return add(lambda, t1, t2, t3, t4, t5, t6, t7, t8, t9, t10);
+    }
+
+    /**
+     * Send every recorded function to the slave and execute them in the order they were recorded.
+     * If a function throws, no values are kept on the slave and the exception is thrown as it would be by {@link Slave#call}.
+     *
+     * @throws RemoteException An error occurred while communicating with the remote JVM
+     */
+    public void execute() throws RemoteException {
+        if (executed) throw new IllegalStateException("Pipeline has already been executed");
+        executed = true;
+        Object[] outputs = slave.runPipeline(steps.toArray(new Step[0]));
+        for (Value<?> value : values) {
+            value.result = outputs[value.step];
+        }
+    }
+
+    private <T> Value<T> add(Serializable lambda, Value<?>... inputs) {
+        if (executed) throw new IllegalStateException("Pipeline has already been executed");
+        Object[] references = new Object[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            if (inputs[i].pipeline != this) throw new IllegalArgumentException("Value belongs to a different pipeline");
+            references[i] = inputs[i].remote != null ? inputs[i].remote : (Object) inputs[i].step;
+        }
+        steps.add(new Step(lambda, references));
+        Value<T> value = new Value<>(this, steps.size() - 1, null);
+        values.add(value);
+        return value;
+    }
+
+    private Step step(Value<?> value) {
+        if (value.pipeline != this || value.remote != null) throw new IllegalArgumentException("Value is not the result of a function in this pipeline");
+        if (executed) throw new IllegalStateException("Pipeline has already been executed");
+        return steps.get(value.step);
+    }
+
+    /**
+     * The result of a function in a pipeline
+     *
+     * @param <T> the type of the result
+     */
+    public static class Value<T> {
+        private final Pipeline pipeline;
+        private final int step;
+        private final RemoteObject<T> remote;
+        private Object result;
+
+        private Value(Pipeline pipeline, int step, RemoteObject<T> remote) {
+            this.pipeline = pipeline;
+            this.step = step;
+            this.remote = remote;
+        }
+
+        /**
+         * @return the result, which must have been marked with {@link Pipeline#fetch(Value)}
+         */
+        @SuppressWarnings("unchecked")
+        public T get() {
+            check(Step.FETCH);
+            return (T) result;
+        }
+
+        /**
+         * @return the remote object holding the result, which must have been marked with {@link Pipeline#keep(Value)}
+         */
+        @SuppressWarnings("unchecked")
+        public RemoteObject<T> getRemote() {
+            if (remote != null) return remote;
+            check(Step.KEEP);
+            return (RemoteObject<T>) result;
+        }
+
+        private void check(byte output) {
+            if (!pipeline.executed) throw new IllegalStateException("Pipeline has not been executed");
+            if (remote != null || pipeline.steps.get(step).output != output) {
+                throw new IllegalStateException("Value was not marked to be " + (output == Step.FETCH ? "fetched" : "kept"));
+            }
+        }
+    }
+
+    /**
+     * A single function in a pipeline, as it is sent to the slave
+     */
+    public static class Step implements Serializable {
+        static final byte DISCARD = 0;
+        static final byte FETCH = 1;
+        static final byte KEEP = 2;
+
+        private final Serializable lambda;
+        private final Object[] inputs;
+        private byte output = DISCARD;
+
+        private Step(Serializable lambda, Object[] inputs) {
+            this.lambda = lambda;
+            this.inputs = inputs;
+        }
+
+        /**
+         * @return the inputs of the function, each is either the index of an earlier step or a remote object
+         */
+        public Object[] getInputs() {
+            return inputs;
+        }
+
+        /**
+         * @return whether the result should be sent back to the host
+         */
+        public boolean isFetched() {
+            return output == FETCH;
+        }
+
+        /**
+         * @return whether the result should be kept on the slave
+         */
+        public boolean isKept() {
+            return output == KEEP;
+        }
+
+        /**
+         * Execute the function of this step
+         *
+         * @param args the values of the inputs
+         * @return the result of the function, or null if it does not return anything
+         */
+        public Object apply(Object[] args) throws Exception {
+            return apply(lambda, args);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Object apply(Object lambda, Object[] a) throws Exception {
+            if (lambda instanceof Functions.Runnable) {
+                ((Functions.Runnable) lambda).run();
+                return null;
+            } else if (lambda instanceof Functions.Supplier) {
+                return ((Functions.Supplier<Object>) lambda).get();
+            } else if (lambda instanceof Functions.Consumer) {
+                ((Functions.Consumer<Object>) lambda).accept(a[0]);
+                return null;
+            } else if (lambda instanceof Functions.Function) {
+                return ((Functions.Function<Object, Object>) lambda).apply(a[0]);
+            } else if (lambda instanceof Functions.BiFunction) {
+                return ((Functions.BiFunction<Object, Object, Object>) lambda).accept(a[0], a[1]);
+            } else if (lambda instanceof Functions.TriFunction) {
+                return ((Functions.TriFunction<Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2]);
+            } else if (lambda instanceof Functions.QuadFunction) {
+                return ((Functions.QuadFunction<Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3]);
+            } else if (lambda instanceof Functions.FiveFunction) {
+                return ((Functions.FiveFunction<Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4]);
+            } else if (lambda instanceof Functions.SixFunction) {
+                return ((Functions.SixFunction<Object, Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4], a[5]);
+            } else if (lambda instanceof Functions.SevenFunction) {
+                return ((Functions.SevenFunction<Object, Object, Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4], a[5], a[6]);
+            } else if (lambda instanceof Functions.EightFunction) {
+                return ((Functions.EightFunction<Object, Object, Object, Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7]);
+            } else if (lambda instanceof Functions.NineFunction) {
+                return ((Functions.NineFunction<Object, Object, Object, Object, Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8]);
+            } else {
+                return ((Functions.TenFunction<Object, Object, Object, Object, Object, Object, Object, Object, Object, Object, Object>) lambda).accept(a[0], a[1], a[2], a[3], a[4], a[5], a[6], a[7], a[8], a[9]);
+            }
+        }
+    }
+}
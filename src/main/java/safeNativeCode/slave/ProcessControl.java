@@ -0,0 +1,82 @@
+package safeNativeCode.slave;
+
+import java.rmi.RemoteException;
+import java.util.List;
+
+/**
+ * ProcessControl is the api the host uses to manage a slave process, on top of the calls made through {@link Slave}.
+ * It is only implemented by the slave process and the transports that reach it, so that users of a slave can't call it.
+ */
+public interface ProcessControl extends InternalSlave {
+
+    /**
+     * @return the epoch of the slave process, which every RemoteObject on the slave carries
+     */
+    int getEpoch() throws RemoteException;
+
+    /**
+     * Set the epoch of the slave process, which the host does before any objects are created on it
+     *
+     * @param epoch an epoch that no other process of the host has
+     */
+    void setEpoch(int epoch) throws RemoteException;
+
+    /**
+     * Remove several objects at once, ignoring any that have already been removed
+     *
+     * @param objects the objects to remove
+     */
+    void removeAll(RemoteObject<?>[] objects) throws RemoteException;
+
+    /**
+     * Keep the objects on the slave for a while longer. Once a lease has been taken, every object is removed if it is not
+     * renewed in time, since the host that could use them has gone away.
+     *
+     * @param millis how long to keep the objects for, in milliseconds
+     */
+    void renewLease(long millis) throws RemoteException;
+
+    /**
+     * @return when the slave process entered main and when it received the host's class supplier, in milliseconds since the epoch
+     */
+    long[] getStartupTimes() throws RemoteException;
+
+    /**
+     * @return the amount of objects stored on the slave, the amount of requests for classes it made to the host, the bytes of
+     * bytecode it received and the time spent waiting for them in nanoseconds, followed by the counts of a LatencyHistogram
+     * of the time taken to execute calls
+     */
+    long[] getProcessMetrics() throws RemoteException;
+
+    /**
+     * Start or stop recording the names of the classes the slave loads from the host
+     *
+     * @param record true to start recording, false to stop
+     */
+    void recordClasses(boolean record) throws RemoteException;
+
+    /**
+     * @return the names of the classes the slave loaded from the host while recording, in the order they were loaded
+     */
+    List<String> getRecordedClasses() throws RemoteException;
+
+    /**
+     * Fetch and load classes in the background, so that they are ready before they are first used
+     *
+     * @param classes the names of the classes to load, in the order they should be loaded
+     */
+    void preloadClasses(List<String> classes) throws RemoteException;
+
+    /**
+     * Wait for the classes passed to {@link #preloadClasses(List)} to finish loading
+     *
+     * @param timeout the longest to wait, in milliseconds
+     * @return true if every preload has finished, false if the time ran out first
+     */
+    boolean awaitPreload(long timeout) throws RemoteException;
+
+    /**
+     * Forget which classes the host did not have, so that they are requested from the host again
+     */
+    void forgetMissingClasses() throws RemoteException;
+}
@@ -0,0 +1,265 @@
+package safeNativeCode.slave;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A RemoteBuffer is a block of memory shared between the host and slaves running on the same machine.
+ * Sending a RemoteBuffer to a slave, for example by using it inside a lambda, only sends the name of the memory, so the slave
+ * sees the contents through {@link #buffer()} without them being serialized or copied. Writes on either side are seen by the other.
+ * <p>
+ * The memory belongs to the process that allocated it, and is freed when that process calls {@link #release()} or the buffer is
+ * garbage collected there. Copies in other processes keep their view of the memory until they are released or collected
+ * themselves. The memory is stored in /dev/shm when it exists, or the directory named by the safeNativeCode.bufferDir property.
+ * Slaves running inside a container can't see the buffer unless that directory is shared with them.
+ */
+public class RemoteBuffer implements Serializable, AutoCloseable {
+    private static final Path DIRECTORY = Paths.get(System.getProperty("safeNativeCode.bufferDir",
+            Files.isDirectory(Paths.get("/dev/shm")) ? "/dev/shm" : System.getProperty("java.io.tmpdir")), "safeNativeCode")
+            .toAbsolutePath().normalize();
+    private static final String PID = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    //Buffers are named after the lock file of their owner, followed by a random number.
+    private static final Pattern BUFFER_NAME = Pattern.compile("[0-9]+-[0-9]+-[0-9]+\\.buffer");
+    private static final ReferenceQueue<RemoteBuffer> collected = new ReferenceQueue<>();
+    //The files of the buffers allocated by this process that have not been released yet.
+    private static final Map<Reference<RemoteBuffer>, Path> owned = new ConcurrentHashMap<>();
+    //The lock held by this process for as long as it runs, which tells other processes that its buffers are still in use.
+    private static FileLock ownerLock;
+    private static String owner;
+
+    static {
+        removeAbandoned();
+        Thread releaser = new Thread(() -> {
+            while (true) {
+                try {
+                    delete(owned.remove(collected.remove()));
+                } catch (InterruptedException e) {
+                    //The releaser runs for as long as the process does.
+                }
+            }
+        }, "RemoteBuffer-release");
+        releaser.setDaemon(true);
+        releaser.start();
+    }
+
+    private final String path;
+    private final int size;
+    private transient volatile MappedByteBuffer mapping;
+    private transient Reference<RemoteBuffer> ownership;
+
+    private RemoteBuffer(Path path, int size) throws IOException {
+        this.path = path.toString();
+        this.size = size;
+        this.mapping = map();
+    }
+
+    /**
+     * Allocate shared memory, which is filled with zeros
+     *
+     * @param size the size of the buffer in bytes
+     * @return the buffer, owned by this process
+     * @throws IOException the shared memory could not be created
+     */
+    public static RemoteBuffer allocate(int size) throws IOException {
+        if (size < 0) throw new IllegalArgumentException("The size of a buffer can't be negative");
+        Path file = Files.createTempFile(DIRECTORY, getOwner() + "-", ".buffer");
+        RemoteBuffer buffer;
+        try {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                //Extending the file does not write anything, the memory is only used once the buffer is written to.
+                if (size > 0) channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            buffer = new RemoteBuffer(file, size);
+        } catch (IOException | RuntimeException e) {
+            delete(file);
+            throw e;
+        }
+        buffer.ownership = new PhantomReference<>(buffer, collected);
+        owned.put(buffer.ownership, file);
+        return buffer;
+    }
+
+    /**
+     * Allocate shared memory holding a copy of an array
+     *
+     * @param data the bytes to copy
+     * @return the buffer, owned by this process
+     * @throws IOException the shared memory could not be created
+     */
+    public static RemoteBuffer copyOf(byte[] data) throws IOException {
+        RemoteBuffer buffer = allocate(data.length);
+        buffer.buffer().put(data);
+        return buffer;
+    }
+
+    /**
+     * Allocate shared memory holding a copy of an array, in the native byte order
+     *
+     * @param data the doubles to copy
+     * @return the buffer, owned by this process
+     * @throws IOException the shared memory could not be created
+     */
+    public static RemoteBuffer copyOf(double[] data) throws IOException {
+        RemoteBuffer buffer = allocate(data.length * Double.BYTES);
+        buffer.buffer().asDoubleBuffer().put(data);
+        return buffer;
+    }
+
+    /**
+     * Get a view of the shared memory. Every call returns a new view in the native byte order, with its own position and limit.
+     *
+     * @return the contents of the buffer
+     * @throws IllegalStateException the buffer has been released
+     */
+    public ByteBuffer buffer() {
+        MappedByteBuffer mapping = this.mapping;
+        if (mapping == null) {
+            throw new IllegalStateException("The buffer has been released");
+        }
+        return mapping.duplicate().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return the size of the buffer in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if the memory belongs to this process, so that it is freed when this buffer is released
+     */
+    public boolean isOwner() {
+        return ownership != null;
+    }
+
+    /**
+     * Stop using the buffer in this process. If this process allocated the buffer the memory is freed as well, although
+     * other processes that are still using it keep their view until they release it.
+     */
+    public synchronized void release() {
+        mapping = null;
+        if (ownership != null) {
+            delete(owned.remove(ownership));
+            ownership = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+
+    private MappedByteBuffer map() throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            //The mapping stays valid after the channel is closed, and even after the file is deleted.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        //Only buffers made by allocate are mapped, so that a stream can't be used to map any other file writable.
+        Path file = Paths.get(path);
+        if (!file.isAbsolute() || !file.normalize().equals(file) || !DIRECTORY.equals(file.getParent())
+                || !BUFFER_NAME.matcher(file.getFileName().toString()).matches()) {
+            throw new InvalidObjectException("Not a RemoteBuffer: " + path);
+        }
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || Files.size(file) != size) {
+            throw new InvalidObjectException("The RemoteBuffer " + path + " does not exist or has the wrong size");
+        }
+        //Map the memory straight away, so that the owner may free it as soon as the buffer has been sent.
+        mapping = map();
+    }
+
+    private static void delete(Path file) {
+        try {
+            if (file != null) Files.deleteIfExists(file);
+        } catch (IOException e) {
+            //The file is removed by the first process to use a RemoteBuffer after this one has exited.
+        }
+    }
+
+    /**
+     * Create the lock file of this process the first time it allocates a buffer, and lock it until the process exits.
+     *
+     * @return the name of the lock file, which the names of the buffers of this process start with
+     */
+    private static synchronized String getOwner() throws IOException {
+        while (owner == null) {
+            Files.createDirectories(DIRECTORY);
+            Path lock = Files.createTempFile(DIRECTORY, PID + "-", ".lock");
+            FileChannel channel = FileChannel.open(lock, StandardOpenOption.WRITE);
+            FileLock fileLock = channel.lock();
+            //Another process may have locked the new file and deleted it as abandoned first, in which case another is made.
+            if (Files.exists(lock)) {
+                String name = lock.getFileName().toString();
+                ownerLock = fileLock;
+                owner = name.substring(0, name.length() - ".lock".length());
+            } else {
+                channel.close();
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Delete buffers left behind by processes that exited without releasing them, such as slaves that were killed.
+     * A process holds the lock on its lock file until it exits, so the buffers of any lock file that can be locked are abandoned.
+     * Locks work across PID namespaces, so buffers shared with slaves in containers are not mistaken for abandoned ones.
+     */
+    private static void removeAbandoned() {
+        File[] files = DIRECTORY.toFile().listFiles();
+        if (files == null) return;
+        Map<String, List<Path>> buffers = new HashMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (BUFFER_NAME.matcher(name).matches()) {
+                buffers.computeIfAbsent(name.substring(0, name.lastIndexOf('-')), o -> new ArrayList<>()).add(file.toPath());
+            } else if (name.endsWith(".lock")) {
+                buffers.computeIfAbsent(name.substring(0, name.length() - ".lock".length()), o -> new ArrayList<>());
+            }
+        }
+        buffers.forEach(RemoteBuffer::removeAbandoned);
+    }
+
+    private static void removeAbandoned(String lockOwner, List<Path> buffers) {
+        Path lockFile = DIRECTORY.resolve(lockOwner + ".lock");
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) return;
+            //The lock file is deleted while it is locked, so that a process that has just made it knows to make another.
+            buffers.forEach(RemoteBuffer::delete);
+            delete(lockFile);
+        } catch (NoSuchFileException e) {
+            //A buffer is only made once the lock file of its owner is locked, so the owner has exited.
+            buffers.forEach(RemoteBuffer::delete);
+        } catch (IOException | RuntimeException e) {
+            //The lock file belongs to another user, or is locked by this process.
+        }
+    }
+}
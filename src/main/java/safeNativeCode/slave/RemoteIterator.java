@@ -0,0 +1,104 @@
+package safeNativeCode.slave;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A RemoteIterator reads the elements of an iterator stored on a slave a batch at a time, usually created with
+ * {@link Slave#iterator(RemoteObject, int)}. The next batch is fetched in the background while the current one is used, so
+ * at most two batches are held by the host at once.
+ *
+ * @param <T> the type of the elements
+ */
+public class RemoteIterator<T> implements Iterator<T>, AutoCloseable {
+    private final Supplier<List<T>> fetch;
+    private final int batchSize;
+    private final Executor executor;
+    private final Runnable onClose;
+    private Iterator<T> current = Collections.emptyIterator();
+    private CompletableFuture<List<T>> next;
+
+    /**
+     * Create an iterator, and start fetching the first batch
+     *
+     * @param fetch     fetches the next batch of at most batchSize elements, a smaller batch means there are no more elements
+     * @param batchSize the amount of elements to fetch at once
+     * @param executor  the executor to fetch batches on
+     * @param onClose   called when the iterator is closed
+     */
+    public RemoteIterator(Supplier<List<T>> fetch, int batchSize, Executor executor, Runnable onClose) {
+        if (batchSize < 1) throw new IllegalArgumentException("Batches must hold at least one element");
+        this.fetch = fetch;
+        this.batchSize = batchSize;
+        this.executor = executor;
+        this.onClose = onClose;
+        this.next = CompletableFuture.supplyAsync(fetch, executor);
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        while (!current.hasNext()) {
+            if (next == null) return false;
+            List<T> batch;
+            try {
+                batch = next.join();
+            } catch (CompletionException e) {
+                next = null;
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+            //Start on the next batch straight away, so that it is ready by the time this one has been used.
+            next = batch.size() < batchSize ? null : CompletableFuture.supplyAsync(fetch, executor);
+            current = batch.iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized T next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        return current.next();
+    }
+
+    /**
+     * @return a sequential stream of the remaining elements, which closes this iterator when it is closed
+     */
+    public Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false).onClose(this::close);
+    }
+
+    /**
+     * Stop fetching elements
+     */
+    @Override
+    public synchronized void close() {
+        current = Collections.emptyIterator();
+        next = null;
+        onClose.run();
+    }
+
+    /**
+     * Take the next batch of elements from an iterator, this is executed on the slave
+     *
+     * @param iterator  the iterator to take elements from
+     * @param batchSize the maximum amount of elements to take
+     * @return the elements
+     */
+    public static <T> List<T> nextBatch(Iterator<T> iterator, int batchSize) {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && iterator.hasNext()) {
+            batch.add(iterator.next());
+        }
+        return batch;
+    }
+}
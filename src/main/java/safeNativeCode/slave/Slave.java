@@ -1,6 +1,9 @@
 package safeNativeCode.slave;
 
 import java.io.IOException;
+import java.rmi.RemoteException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * A Slave is a remote process that is able to execute code
@@ -23,4 +26,65 @@ public interface Slave extends InternalSlave {
      * Wait for the slave to exit
      */
     void waitForExit() throws InterruptedException, IOException;
+
+    /**
+     * Create a pipeline, used to execute a chain of functions on the slave in a single call
+     *
+     * @return an empty pipeline that executes on this slave
+     */
+    Pipeline pipeline();
+
+    /**
+     * Read the elements of an iterator stored on the slave a batch at a time, fetching the next batch while the current one
+     * is used. The elements must be serializable.
+     *
+     * @param iterator  the iterator on the slave
+     * @param batchSize the amount of elements to fetch at once
+     * @return an iterator over the remaining elements
+     */
+    <T> RemoteIterator<T> iterator(RemoteObject<? extends Iterator<T>> iterator, int batchSize);
+
+    /**
+     * Read the elements of an iterable stored on the slave a batch at a time, fetching the next batch while the current one
+     * is used. The elements must be serializable. The iterator created on the slave is removed when the returned iterator is closed.
+     *
+     * @param iterable  the iterable on the slave
+     * @param batchSize the amount of elements to fetch at once
+     * @return an iterator over the elements
+     * @throws RemoteException the iterator could not be created
+     */
+    <T> RemoteIterator<T> iterate(RemoteObject<? extends Iterable<T>> iterable, int batchSize) throws RemoteException;
+
+    /**
+     * Execute a function on the slave without blocking the calling thread.
+     * If the slave fails the returned future completes exceptionally with the same exception the blocking variant would throw.
+     *
+     * @param lambda the function to execute
+     * @return a future that completes once the function has been executed
+     */
+    CompletableFuture<Void> runAsync(Functions.Runnable lambda);
+
+    <T> CompletableFuture<Void> runAsync(RemoteObject<T> obj, Functions.Consumer<T> lambda);
+
+    <R> CompletableFuture<RemoteObject<R>> callAsync(Functions.Supplier<R> lambda);
+
+    <R, T> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T> t, Functions.Function<R, T> lambda);
+
+    <R, T1, T2> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, Functions.BiFunction<R, T1, T2> lambda);
+
+    <R, T1, T2, T3> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, Functions.TriFunction<R, T1, T2, T3> lambda);
+
+    <R, T1, T2, T3, T4> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, Functions.QuadFunction<R, T1, T2, T3, T4> lambda);
+
+    <R, T1, T2, T3, T4, T5> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, Functions.FiveFunction<R, T1, T2, T3, T4, T5> lambda);
+
+    <R, T1, T2, T3, T4, T5, T6> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, Functions.SixFunction<R, T1, T2, T3, T4, T5, T6> lambda);
+
+    <R, T1, T2, T3, T4, T5, T6, T7> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, Functions.SevenFunction<R, T1, T2, T3, T4, T5, T6, T7> lambda);
+
+    <R, T1, T2, T3, T4, T5, T6, T7, T8> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, Functions.EightFunction<R, T1, T2, T3, T4, T5, T6, T7, T8> lambda);
+
+    <R, T1, T2, T3, T4, T5, T6, T7, T8, T9> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, Functions.NineFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9> lambda);
+
+    <R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, RemoteObject<T10> t10, Functions.TenFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> lambda);
 }
@@ -3,38 +3,83 @@ package safeNativeCode.slave.host;
 import safeNativeCode.exceptions.SlaveException;
 import safeNativeCode.exceptions.UnknownObjectException;
 import safeNativeCode.slave.Functions;
-import safeNativeCode.slave.InternalSlave;
+import safeNativeCode.slave.Pipeline;
+import safeNativeCode.slave.ProcessControl;
+import safeNativeCode.slave.RemoteIterator;
 import safeNativeCode.slave.RemoteObject;
 import safeNativeCode.slave.Slave;
 import safeNativeCode.slave.process.ProcessMain;
+import safeNativeCode.slave.process.ProcessObject;
+import safeNativeCode.slave.transport.RmiTransport;
+import safeNativeCode.slave.transport.SlaveTransport;
 
 import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
 import java.net.SocketException;
 import java.nio.file.Paths;
-import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
-import java.rmi.UnmarshalException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A AbstractSlave is used when we have a server that executes code in a safeNativeCode.slave process somewhere.
  */
 public abstract class AbstractSlave implements Slave {
-    private InternalSlave slave;
-    private int registryPort;
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "AbstractSlave-async");
+        t.setDaemon(true);
+        return t;
+    });
+    //Slaves remove every object if the host stops renewing its lease, so objects don't outlive a host that has crashed.
+    private static final long LEASE = 60000;
+    private static final ScheduledExecutorService LEASES = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "AbstractSlave-lease");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile ProcessControl slave;
+    //Renews the lease of the current process, until the slave is terminated or its process is taken over by another slave.
+    private volatile ScheduledFuture<?> lease;
+    private volatile int epoch;
+    private volatile Executor executor = DEFAULT_EXECUTOR;
+    private final Workers workers = new Workers();
+    private final Lock[] objectLocks = Stream.generate(() -> new ReentrantLock(true)).limit(64).toArray(Lock[]::new);
+    //The last asynchronous call made on the objects of each lock, which the next asynchronous call on them waits for.
+    private final CompletableFuture<?>[] objectQueues = Stream.generate(() -> CompletableFuture.completedFuture(null)).limit(objectLocks.length).toArray(CompletableFuture<?>[]::new);
+    private final SlaveTransport transport;
+    private final SlaveMetrics metrics;
+    private final Thread shutdownHook = new Thread(this::terminate);
+    private volatile ClassSupplier supplier;
     private LinkedHashSet<ClassLoader> classLoaders;
     private boolean timeLimitUp = false;
+    private volatile boolean recordClasses = false;
+    private volatile ClassProfile classProfile;
+    private volatile Supplier<? extends AbstractSlave> standbyFactory;
+    private volatile CompletableFuture<? extends AbstractSlave> standby;
+    private final AtomicLong failovers = new AtomicLong();
+    private final AtomicLong failoverTime = new AtomicLong();
+    //When the current process was launched and connected to, in milliseconds since the epoch, and how long its first call took.
+    private volatile long launched;
+    private volatile long connected;
+    private volatile long firstCall = -1;
     private String[] args;
 
     /**
@@ -43,18 +88,30 @@ public abstract class AbstractSlave implements Slave {
      * @param classLoaders a list of classloaders to supply classes to the safeNativeCode.slave
      */
     AbstractSlave(int timeLimit, String[] args, ClassLoader... classLoaders) {
+        this(timeLimit, args, new RmiTransport(), classLoaders);
+    }
+
+    /**
+     * Create a safeNativeCode.slave that runs in another process somewhere
+     *
+     * @param transport    the transport used to communicate with the safeNativeCode.slave
+     * @param classLoaders a list of classloaders to supply classes to the safeNativeCode.slave
+     */
+    AbstractSlave(int timeLimit, String[] args, SlaveTransport transport, ClassLoader... classLoaders) {
         this.args = args;
+        this.transport = transport;
+        this.metrics = new SlaveMetrics(this, transport);
         if (classLoaders.length == 0) {
             classLoaders = new ClassLoader[]{ClassLoader.getSystemClassLoader()};
         }
         this.classLoaders = new LinkedHashSet<>(Arrays.asList(classLoaders));
-        this.registryPort = findAvailablePort();
-        Runtime.getRuntime().addShutdownHook(new Thread(this::terminate));
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
         if (timeLimit > 0) {
             new Thread(() -> {
                 try {
                     Thread.sleep(timeLimit * 1000);
                     timeLimitUp = true;
+                    metrics.timedOut();
                     if (isAlive()) {
                         terminate();
                     }
@@ -66,27 +123,33 @@ public abstract class AbstractSlave implements Slave {
     }
 
     public void addClassLoader(ClassLoader c) {
-        this.classLoaders.add(c);
+        if (this.classLoaders.add(c) && supplier != null) {
+            supplier.invalidate();
+            try {
+                //The new classloader may have classes the slave was told were missing.
+                slave.forgetMissingClasses();
+            } catch (RemoteException e) {
+                //The slave is gone, and a new one starts without remembering any missing classes.
+            }
+        }
     }
 
-    public boolean hasTimedOut() {
-        return timeLimitUp;
+    /**
+     * Set the executor used to wait for asynchronous calls, such as {@link #callAsync(Functions.Supplier)}.
+     * By default a shared pool of daemon threads is used.
+     *
+     * @param executor the executor to run asynchronous calls on
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
     }
 
-    private int findAvailablePort() {
-        try {
-            ServerSocket ss = new ServerSocket();
-            ss.setReuseAddress(true);
-            ss.bind(new InetSocketAddress(0));
-            ss.close();
-            return ss.getLocalPort();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public boolean hasTimedOut() {
+        return timeLimitUp;
     }
 
     protected String[] getSlaveArgs() {
-        return new String[]{registryPort + ""};
+        return new String[]{transport.getClass().getName(), transport.getEndpoint()};
     }
 
     protected List<String> getJavaArgs(String libLocation){
@@ -115,54 +178,326 @@ public abstract class AbstractSlave implements Slave {
                 .toArray(String[]::new);
     }
 
-    void setupRegistry() throws RemoteException, InterruptedException {
+    /**
+     * Connect to a slave process that has just been launched
+     */
+    void setupRegistry() throws IOException, InterruptedException {
         if (timeLimitUp) return;
-        Registry registry = LocateRegistry.getRegistry(registryPort);
-        ClassSupplier retriever = new ClassSupplier(classLoaders);
-        //Try repeatedly until the registry is active.
-        while (true) {
-            try {
-                registry.rebind("bytecodeLookup", retriever);
-                //Start a thread that monitors the remote process, and frees up the retrievers ports when it is completed.
-                new Thread(() -> {
-                    try {
-                        this.waitForExit();
-                        UnicastRemoteObject.unexportObject(retriever, true);
-                    } catch (InterruptedException | IOException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                }).start();
-                break;
-            } catch (RemoteException e) {
-                Thread.sleep(10);
-            }
+        long launched = System.currentTimeMillis();
+        //Suppliers are cheap to create, since the bytecode they serve comes from an archive shared between slaves.
+        ClassSupplier previous = supplier;
+        supplier = new ClassSupplier(classLoaders, metrics);
+        if (previous != null) previous.close();
+        slave = transport.connect(this, supplier);
+        this.launched = launched;
+        connected = System.currentTimeMillis();
+        firstCall = -1;
+        //The host picks the epoch, so that the ids of objects on different slaves never collide.
+        epoch = ProcessObject.newEpoch();
+        slave.setEpoch(epoch);
+        slave.renewLease(LEASE);
+        startLease();
+        //Restarted slaves pick up where the previous process left off.
+        if (recordClasses) {
+            slave.recordClasses(true);
         }
-        while (true) {
-            try {
-                slave = (InternalSlave) registry.lookup("safeNativeCode/slave/process");
-                break;
-            } catch (NotBoundException | UnmarshalException e) {
-                Thread.sleep(10);
-            }
+        if (classProfile != null) {
+            slave.preloadClasses(classProfile.getClasses());
         }
     }
 
+    /**
+     * Start or stop recording the classes the slave loads, so that they can be saved with {@link #getClassProfile()}.
+     * Recording continues if the slave is restarted.
+     *
+     * @param record true to start recording, false to stop
+     */
+    public void recordClasses(boolean record) {
+        this.recordClasses = record;
+        control(() -> {
+            slave.recordClasses(record);
+            return null;
+        });
+    }
+
+    long[] getProcessMetrics() throws RemoteException {
+        //Not executed like a call, so that metrics can be read while calls are executing.
+        return slave.getProcessMetrics();
+    }
+
+    /**
+     * @return the metrics recorded for this slave, which can also be published over JMX
+     */
+    public SlaveMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Break down how long the current slave process took to start, and how long the first call made on it took
+     *
+     * @return the startup times of the current slave process
+     */
+    public StartupTimes getStartupBreakdown() {
+        long[] times = control(() -> slave.getStartupTimes());
+        long firstCall = this.firstCall;
+        return new StartupTimes(times[0] - launched, times[1] - times[0], connected - times[1], connected - launched,
+                firstCall < 0 ? -1 : firstCall / 1000000d);
+    }
+
+    /**
+     * @return the classes the slave loaded while recording, in the order they were loaded
+     */
+    public ClassProfile getClassProfile() {
+        return new ClassProfile(control(() -> slave.getRecordedClasses()));
+    }
+
+    /**
+     * Load the classes in a profile on the slave in the background, so that calls using them don't have to wait for them to be
+     * fetched. The profile is loaded again whenever the slave is restarted.
+     *
+     * @param profile a profile recorded by {@link #getClassProfile()}
+     */
+    public void setClassProfile(ClassProfile profile) {
+        this.classProfile = profile;
+        control(() -> {
+            slave.preloadClasses(profile.getClasses());
+            return null;
+        });
+    }
+
+    /**
+     * Wait for the slave to finish loading the profile given to {@link #setClassProfile(ClassProfile)}
+     *
+     * @param timeout the longest to wait, in milliseconds
+     * @return true if the profile has been loaded, false if the time ran out first
+     */
+    public boolean awaitClassProfile(long timeout) {
+        return control(() -> slave.awaitPreload(timeout));
+    }
+
     protected abstract void start();
 
-    private void checkAlive() {
+    /**
+     * End the current process of the slave straight away. The slave starts a new process if it is used again.
+     */
+    protected abstract void stopProcess();
+
+    /**
+     * Stop the process of the slave and its standby, and stop renewing its lease. The slave starts a new process if it is used
+     * again, and a new standby the next time it would fail over.
+     */
+    @Override
+    public void terminate() {
+        stopLease();
+        CompletableFuture<? extends AbstractSlave> standby = this.standby;
+        this.standby = null;
+        if (standby != null) {
+            //A standby that is still starting is terminated once it has started.
+            standby.thenAccept(AbstractSlave::terminate);
+        }
+        stopProcess();
+        ClassSupplier supplier = this.supplier;
+        if (supplier != null) supplier.close();
+    }
+
+    private synchronized void checkAlive() {
         try {
             if (timeLimitUp || !isAlive()) {
-                this.start();
+                if (!timeLimitUp) metrics.restarted();
+                //The time limit applies to the slave as a whole, so a slave that ran out of time is not failed over.
+                if (timeLimitUp || !failOver()) {
+                    this.start();
+                }
             }
         } catch (IOException | InterruptedException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private synchronized <T> T execute(Callable<T> c) {
-        checkAlive();
+    /**
+     * Keep a second slave process started, which takes over straight away when the process of this slave dies, instead of
+     * the next call waiting for a new process to start. A new standby is started in the background after every failover.
+     * The factory should create slaves of the same type as this one without a time limit, such as {@code ProcessSlave::new}.
+     *
+     * @param factory used to create standby slaves, or null to stop keeping a standby
+     */
+    public synchronized void setStandby(Supplier<? extends AbstractSlave> factory) {
+        CompletableFuture<? extends AbstractSlave> previous = standby;
+        standbyFactory = factory;
+        standby = null;
+        if (previous != null) {
+            previous.thenAccept(AbstractSlave::terminate);
+        }
+        startStandby();
+    }
+
+    /**
+     * @return a future completed once the current standby has started, which is already complete if no standby is kept
+     */
+    public CompletableFuture<Void> getStandbyStarted() {
+        CompletableFuture<? extends AbstractSlave> standby = this.standby;
+        return standby == null ? CompletableFuture.completedFuture(null) : standby.thenApply(s -> null);
+    }
+
+    /**
+     * @return the amount of times a standby has taken over from a process that died
+     */
+    public long getFailoverCount() {
+        return failovers.get();
+    }
+
+    /**
+     * @return the average time taken for a standby to take over, in milliseconds
+     */
+    public double getAverageFailoverTime() {
+        long count = failovers.get();
+        return count == 0 ? 0 : failoverTime.get() / 1000000d / count;
+    }
+
+    private void startStandby() {
+        Supplier<? extends AbstractSlave> factory = standbyFactory;
+        if (factory != null) {
+            standby = CompletableFuture.supplyAsync(factory, DEFAULT_EXECUTOR);
+        }
+    }
+
+    private boolean failOver() throws IOException, InterruptedException {
+        CompletableFuture<? extends AbstractSlave> next = standby;
+        if (next == null) {
+            //The slave was terminated, so it is restarted without one and a standby is kept again from now on.
+            startStandby();
+            return false;
+        }
+        long start = System.nanoTime();
+        AbstractSlave replacement;
+        try {
+            //A standby that is still starting is further along than a process started now would be.
+            replacement = next.join();
+        } catch (CompletionException | CancellationException e) {
+            startStandby();
+            return false;
+        }
+        startStandby();
+        if (replacement.getClass() != getClass() || replacement.hasTimedOut() || !replacement.isAlive()) {
+            replacement.terminate();
+            return false;
+        }
+        adopt(replacement);
+        failovers.incrementAndGet();
+        failoverTime.addAndGet(System.nanoTime() - start);
+        return true;
+    }
+
+    /**
+     * Take over the process of a standby slave of the same type. Subclasses take over what they keep about their process as well.
+     *
+     * @param standby the started standby, which is no longer used by itself afterwards
+     */
+    void adopt(AbstractSlave standby) throws RemoteException {
+        //Keep this slave's classloaders, in their order, so classes resolve the same way they did before the failover.
+        ClassSupplier previous = supplier;
+        supplier = standby.supplier;
+        if (previous != null) previous.close();
+        supplier.setClassLoaders(classLoaders);
+        supplier.setMetrics(metrics);
+        metrics.adopt(standby.transport);
+        epoch = standby.epoch;
+        launched = standby.launched;
+        connected = standby.connected;
+        firstCall = -1;
+        slave = standby.slave;
+        standby.detach();
+        slave.renewLease(LEASE);
+        startLease();
+        //Classes missing from the standby's classloaders may be found in this slave's.
+        slave.forgetMissingClasses();
+        if (recordClasses) {
+            slave.recordClasses(true);
+        }
+        if (classProfile != null) {
+            slave.preloadClasses(classProfile.getClasses());
+        }
+    }
+
+    /**
+     * Stop using a slave whose process has been taken over by another slave, without ending the process. The slave stops
+     * renewing its lease, since the other slave renews it from now on, and no longer terminates the process when the host exits.
+     * Subclasses let go of what they keep about the process as well.
+     */
+    void detach() {
+        stopLease();
+        slave = null;
+        supplier = null;
         try {
-            return c.call();
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            //The host is already exiting.
+        }
+    }
+
+    /**
+     * Set how many calls may execute on the slave at the same time. Calls that share a RemoteObject are still executed one
+     * at a time, and asynchronous calls that share a RemoteObject execute in the order they were made. By default only a
+     * single call executes at a time. Calls that are executing when the concurrency is lowered are allowed to finish.
+     *
+     * @param workers the maximum amount of calls executing concurrently
+     */
+    public void setConcurrency(int workers) {
+        if (workers < 1) throw new IllegalArgumentException("At least one worker is required");
+        this.workers.resize(workers);
+    }
+
+    private int[] lockIndices(RemoteObject<?>[] objects) {
+        return Arrays.stream(objects).mapToInt(o -> Math.floorMod(Objects.hashCode(o), objectLocks.length)).sorted().distinct().toArray();
+    }
+
+    private Lock[] lockObjects(RemoteObject<?>[] objects) {
+        int[] indices = lockIndices(objects);
+        Lock[] locks = new Lock[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            locks[i] = objectLocks[indices[i]];
+            locks[i].lock();
+        }
+        return locks;
+    }
+
+    private <T> T execute(Callable<T> c, RemoteObject<?>... objects) {
+        return execute(true, c, objects);
+    }
+
+    /**
+     * Execute a call the host makes to manage the slave, which is not counted in the metrics of the calls made on it
+     */
+    private <T> T control(Callable<T> c) {
+        return execute(false, c);
+    }
+
+    private <T> T execute(boolean counted, Callable<T> c, RemoteObject<?>... objects) {
+        long entered = System.nanoTime();
+        //Lock objects in a fixed order before taking a worker, so that calls can never wait on each other in a cycle.
+        Lock[] locks = lockObjects(objects);
+        workers.acquireUninterruptibly();
+        if (counted) metrics.waited(System.nanoTime() - entered);
+        boolean succeeded = false;
+        try {
+            checkAlive();
+            //Objects from a slave process that has since been restarted, or from another slave, can never be found.
+            for (RemoteObject<?> object : objects) {
+                if (object instanceof ProcessObject && ((ProcessObject<?>) object).getEpoch() != epoch) {
+                    throw new UnknownObjectException();
+                }
+            }
+            long start = System.nanoTime();
+            T result = c.call();
+            long elapsed = System.nanoTime() - start;
+            if (counted) {
+                metrics.called(objects.length, elapsed);
+                if (firstCall < 0) {
+                    firstCall = elapsed;
+                }
+            }
+            succeeded = true;
+            return result;
         } catch (RemoteException | EOFException e) {
             //EOFExceptions are thrown if RMI was unable to retrieve data from a slave, aka the slave has died
             if (e.getCause() instanceof SocketException || e.getCause() instanceof ConnectException || e instanceof EOFException || e.getCause() instanceof EOFException) {
@@ -173,9 +508,59 @@ public abstract class AbstractSlave implements Slave {
             throw e;
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            if (counted && !succeeded) metrics.failed();
+            workers.release();
+            for (Lock lock : locks) {
+                lock.unlock();
+            }
         }
     }
 
+    private <T> CompletableFuture<T> executeAsync(Callable<T> c, RemoteObject<?>... objects) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        //Completed once the call has executed, even if the caller's future is cancelled before then.
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queue(done, objects).whenComplete((ignored, e) -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        future.complete(execute(c, objects));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        done.complete(null);
+                    }
+                });
+            } catch (RuntimeException t) {
+                future.completeExceptionally(t);
+                done.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Queue an asynchronous call behind the previous asynchronous calls on the same objects. The object locks can't be
+     * taken by the caller, since the call executes on another thread, so the calls are chained instead.
+     *
+     * @param done    completed once the call has executed
+     * @param objects the objects the call uses
+     * @return completed once the call may start
+     */
+    private CompletableFuture<Void> queue(CompletableFuture<Void> done, RemoteObject<?>[] objects) {
+        if (objects.length == 0) return CompletableFuture.completedFuture(null);
+        int[] indices = lockIndices(objects);
+        CompletableFuture<?>[] previous = new CompletableFuture<?>[indices.length];
+        synchronized (objectQueues) {
+            for (int i = 0; i < indices.length; i++) {
+                previous[i] = objectQueues[indices[i]];
+                objectQueues[indices[i]] = done;
+            }
+        }
+        return CompletableFuture.allOf(previous);
+    }
+
     @Override
     public void run(Functions.Runnable lambda) {
         execute(() -> {
@@ -189,7 +574,7 @@ public abstract class AbstractSlave implements Slave {
         execute(() -> {
             slave.call(obj, lambda);
             return null;
-        });
+        }, obj);
     }
 
     @Override
@@ -204,52 +589,52 @@ public abstract class AbstractSlave implements Slave {
 
     @Override
     public <R, T> RemoteObject<R> call(RemoteObject<T> t, Functions.Function<R, T> lambda) throws RemoteException {
-        return execute(() -> slave.call(t, lambda));
+        return execute(() -> slave.call(t, lambda), t);
     }
 
     @Override
     public <R, T1, T2> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, Functions.BiFunction<R, T1, T2> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, lambda));
+        return execute(() -> slave.call(t1, t2, lambda), t1, t2);
     }
 
     @Override
     public <R, T1, T2, T3> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, Functions.TriFunction<R, T1, T2, T3> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, lambda));
+        return execute(() -> slave.call(t1, t2, t3, lambda), t1, t2, t3);
     }
 
     @Override
     public <R, T1, T2, T3, T4> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, Functions.QuadFunction<R, T1, T2, T3, T4> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, lambda), t1, t2, t3, t4);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, Functions.FiveFunction<R, T1, T2, T3, T4, T5> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, lambda), t1, t2, t3, t4, t5);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, Functions.SixFunction<R, T1, T2, T3, T4, T5, T6> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, lambda), t1, t2, t3, t4, t5, t6);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, Functions.SevenFunction<R, T1, T2, T3, T4, T5, T6, T7> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, lambda), t1, t2, t3, t4, t5, t6, t7);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, Functions.EightFunction<R, T1, T2, T3, T4, T5, T6, T7, T8> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, lambda), t1, t2, t3, t4, t5, t6, t7, t8);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, Functions.NineFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, lambda), t1, t2, t3, t4, t5, t6, t7, t8, t9);
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, RemoteObject<T10> t10, Functions.TenFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> lambda) throws RemoteException {
-        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, t10, lambda));
+        return execute(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, t10, lambda), t1, t2, t3, t4, t5, t6, t7, t8, t9, t10);
     }
 
     @Override
@@ -261,4 +646,171 @@ public abstract class AbstractSlave implements Slave {
     public void remove(RemoteObject obj) throws RemoteException, UnknownObjectException {
         slave.remove(obj);
     }
+
+    private void startLease() {
+        stopLease();
+        lease = LEASES.scheduleWithFixedDelay(this::renewLease, LEASE / 3, LEASE / 3, TimeUnit.MILLISECONDS);
+    }
+
+    private void stopLease() {
+        ScheduledFuture<?> lease = this.lease;
+        if (lease != null) {
+            lease.cancel(false);
+        }
+    }
+
+    private void renewLease() {
+        ProcessControl slave = this.slave;
+        try {
+            if (slave != null && isAlive()) {
+                slave.renewLease(LEASE);
+            }
+        } catch (IOException | InterruptedException e) {
+            //The slave has exited, and will take a new lease when it is restarted.
+        }
+    }
+
+    @Override
+    public void clear() throws RemoteException {
+        execute(() -> {
+            slave.clear();
+            return null;
+        });
+    }
+
+    @Override
+    public Pipeline pipeline() {
+        return new Pipeline(this);
+    }
+
+    @Override
+    public <T> RemoteIterator<T> iterator(RemoteObject<? extends Iterator<T>> iterator, int batchSize) {
+        return new RemoteIterator<>(() -> nextBatch(iterator, batchSize), batchSize, executor, () -> {});
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> RemoteIterator<T> iterate(RemoteObject<? extends Iterable<T>> iterable, int batchSize) throws RemoteException {
+        RemoteObject<Iterator<T>> iterator = call((RemoteObject<Iterable<T>>) iterable, (Functions.Function<Iterator<T>, Iterable<T>>) Iterable::iterator);
+        return new RemoteIterator<>(() -> nextBatch(iterator, batchSize), batchSize, executor, () -> {
+            try {
+                iterator.remove();
+            } catch (RemoteException | UnknownObjectException e) {
+                //The slave is gone, or the iterator has already been released.
+            }
+        });
+    }
+
+    private <T> List<T> nextBatch(RemoteObject<? extends Iterator<T>> iterator, int batchSize) {
+        //Take and fetch the batch in a single call, rather than storing it on the slave first.
+        Pipeline pipeline = pipeline();
+        Pipeline.Value<List<T>> batch = pipeline.fetch(pipeline.call(pipeline.of(iterator), it -> RemoteIterator.nextBatch(it, batchSize)));
+        try {
+            pipeline.execute();
+        } catch (RemoteException e) {
+            throw new RuntimeException(e);
+        }
+        return batch.get();
+    }
+
+    @Override
+    public Object[] runPipeline(Pipeline.Step[] steps) throws RemoteException {
+        RemoteObject<?>[] objects = Arrays.stream(steps)
+                .flatMap(step -> Arrays.stream(step.getInputs()))
+                .filter(input -> input instanceof RemoteObject)
+                .toArray(RemoteObject<?>[]::new);
+        return execute(() -> slave.runPipeline(steps), objects);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAsync(Functions.Runnable lambda) {
+        return executeAsync(() -> {
+            slave.run(lambda);
+            return null;
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<Void> runAsync(RemoteObject<T> obj, Functions.Consumer<T> lambda) {
+        return executeAsync(() -> {
+            slave.call(obj, lambda);
+            return null;
+        }, obj);
+    }
+
+    @Override
+    public <R> CompletableFuture<RemoteObject<R>> callAsync(Functions.Supplier<R> lambda) {
+        return executeAsync(() -> slave.call(lambda));
+    }
+
+    @Override
+    public <R, T> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T> t, Functions.Function<R, T> lambda) {
+        return executeAsync(() -> slave.call(t, lambda), t);
+    }
+
+    @Override
+    public <R, T1, T2> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, Functions.BiFunction<R, T1, T2> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, lambda), t1, t2);
+    }
+
+    @Override
+    public <R, T1, T2, T3> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, Functions.TriFunction<R, T1, T2, T3> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, lambda), t1, t2, t3);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, Functions.QuadFunction<R, T1, T2, T3, T4> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, lambda), t1, t2, t3, t4);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, Functions.FiveFunction<R, T1, T2, T3, T4, T5> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, lambda), t1, t2, t3, t4, t5);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5, T6> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, Functions.SixFunction<R, T1, T2, T3, T4, T5, T6> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, t6, lambda), t1, t2, t3, t4, t5, t6);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5, T6, T7> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, Functions.SevenFunction<R, T1, T2, T3, T4, T5, T6, T7> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, lambda), t1, t2, t3, t4, t5, t6, t7);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, Functions.EightFunction<R, T1, T2, T3, T4, T5, T6, T7, T8> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, lambda), t1, t2, t3, t4, t5, t6, t7, t8);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, Functions.NineFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, lambda), t1, t2, t3, t4, t5, t6, t7, t8, t9);
+    }
+
+    @Override
+    public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> CompletableFuture<RemoteObject<R>> callAsync(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, RemoteObject<T10> t10, Functions.TenFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> lambda) {
+        return executeAsync(() -> slave.call(t1, t2, t3, t4, t5, t6, t7, t8, t9, t10, lambda), t1, t2, t3, t4, t5, t6, t7, t8, t9, t10);
+    }
+
+    /**
+     * The permits for calls to execute on the slave, which can be resized while calls hold them
+     */
+    private static class Workers extends Semaphore {
+        private int size = 1;
+
+        Workers() {
+            super(1, true);
+        }
+
+        synchronized void resize(int size) {
+            if (size > this.size) {
+                release(size - this.size);
+            } else {
+                //Permits held by executing calls are taken away once they are released.
+                reducePermits(this.size - size);
+            }
+            this.size = size;
+        }
+    }
 }
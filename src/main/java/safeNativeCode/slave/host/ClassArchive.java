@@ -0,0 +1,215 @@
+package safeNativeCode.slave.host;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+/**
+ * A ClassArchive stores the bytecode served to slaves in a memory mapped file, so that the bytecode for a class only has to
+ * be read from its classloader once, no matter how many slaves ask for it.
+ * The archive is filled as classes are requested, and is shared by every slave using the same list of classloaders.
+ * Every archive returned by {@link #of(Collection)} must be released once it is no longer used, and the archive is deleted
+ * when its last user releases it.
+ */
+public class ClassArchive {
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+    private static final Map<Key, ClassArchive> archives = new HashMap<>();
+
+    private final Key key;
+    private final File file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> packages = new ConcurrentHashMap<>();
+    private long mapped = 0;
+    private int position = 0;
+    //The amount of suppliers using the archive, guarded by archives.
+    private int users = 0;
+    private boolean deleted = false;
+
+    private ClassArchive(Key key) throws IOException {
+        this.key = key;
+        file = File.createTempFile("safeNativeCode-classes", ".archive");
+        file.deleteOnExit();
+        channel = new RandomAccessFile(file, "rw").getChannel();
+    }
+
+    /**
+     * Get the archive shared by every slave that uses a list of classloaders, creating it if it does not exist yet.
+     * The archive must be released once it is no longer used.
+     *
+     * @param classLoaders the classloaders the bytecode in the archive comes from, in the order they are searched
+     * @return the shared archive
+     */
+    public static ClassArchive of(Collection<ClassLoader> classLoaders) {
+        Key key = new Key(classLoaders);
+        synchronized (archives) {
+            //Archives for classloaders that have been garbage collected can never be used again.
+            archives.entrySet().removeIf(e -> {
+                if (e.getKey().isCleared()) {
+                    e.getValue().delete();
+                    return true;
+                }
+                return false;
+            });
+            ClassArchive archive = archives.computeIfAbsent(key, k -> {
+                try {
+                    return new ClassArchive(k);
+                } catch (IOException e) {
+                    throw new RuntimeException("Unable to create class archive", e);
+                }
+            });
+            archive.users++;
+            return archive;
+        }
+    }
+
+    /**
+     * Stop using an archive returned by {@link #of(Collection)}, deleting it if nothing else uses it.
+     * Bytecode can still be read from a deleted archive, but nothing new is stored in it.
+     */
+    public void release() {
+        synchronized (archives) {
+            if (--users > 0) return;
+            archives.remove(key, this);
+        }
+        delete();
+    }
+
+    /**
+     * Get the bytecode for a class, reading it and storing it in the archive if it has not been requested before
+     *
+     * @param clazz  the name of the class
+     * @param reader used to read the bytecode if the archive does not hold it, returning null if it does not exist
+     * @return the bytecode, or null if it does not exist
+     */
+    public byte[] get(String clazz, Function<String, byte[]> reader) throws IOException {
+        Entry entry = index.get(clazz);
+        if (entry == null) {
+            //Read and store the class at most once, even when several slaves ask for it at the same time.
+            byte[][] read = new byte[1][];
+            try {
+                entry = index.computeIfAbsent(clazz, name -> {
+                    read[0] = reader.apply(name);
+                    try {
+                        return read[0] == null ? null : append(read[0]);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (read[0] != null || entry == null) return read[0];
+        }
+        byte[] b = new byte[entry.length];
+        ByteBuffer segment = segments.get(entry.segment).duplicate();
+        segment.position(entry.position);
+        segment.get(b);
+        return b;
+    }
+
+    /**
+     * Get the names of the classes stored next to a class, finding them if they have not been requested before
+     *
+     * @param clazz  the name of the class
+     * @param finder used to find the names of the classes if the archive does not hold them
+     * @return the names of the classes in the same package and location as clazz
+     */
+    public List<String> getPackage(String clazz, Function<String, List<String>> finder) {
+        return packages.computeIfAbsent(clazz, finder);
+    }
+
+    /**
+     * Store bytecode at the end of the archive
+     *
+     * @return where the bytecode is stored, or null if the archive has been deleted
+     */
+    private synchronized Entry append(byte[] b) throws IOException {
+        if (deleted) return null;
+        if (segments.isEmpty() || position + b.length > segments.get(segments.size() - 1).capacity()) {
+            //Classes larger than a segment get a segment of their own.
+            int size = Math.max(SEGMENT_SIZE, b.length);
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, mapped, size));
+            mapped += size;
+            position = 0;
+        }
+        ByteBuffer segment = segments.get(segments.size() - 1).duplicate();
+        segment.position(position);
+        segment.put(b);
+        Entry entry = new Entry(segments.size() - 1, position, b.length);
+        position += b.length;
+        return entry;
+    }
+
+    private synchronized void delete() {
+        deleted = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //Nothing else can be done with the archive.
+        }
+        file.delete();
+    }
+
+    private static class Entry {
+        final int segment;
+        final int position;
+        final int length;
+
+        Entry(int segment, int position, int length) {
+            this.segment = segment;
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Identifies a list of classloaders, without keeping them from being garbage collected
+     */
+    private static class Key {
+        private final WeakReference<?>[] loaders;
+        private final int hash;
+
+        Key(Collection<ClassLoader> classLoaders) {
+            loaders = classLoaders.stream().map(WeakReference::new).toArray(WeakReference[]::new);
+            hash = classLoaders.stream().mapToInt(System::identityHashCode).reduce(1, (a, b) -> 31 * a + b);
+        }
+
+        boolean isCleared() {
+            for (WeakReference<?> loader : loaders) {
+                if (loader.get() == null) return true;
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            if (hash != that.hash || loaders.length != that.loaders.length) return false;
+            for (int i = 0; i < loaders.length; i++) {
+                if (loaders[i].get() == null || loaders[i].get() != that.loaders[i].get()) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
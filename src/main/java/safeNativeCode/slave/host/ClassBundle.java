@@ -0,0 +1,62 @@
+package safeNativeCode.slave.host;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * ClassBundle packs the bytecode of several classes into a single compressed array, so that they can be sent to a slave at once.
+ */
+public class ClassBundle {
+    private ClassBundle() {
+    }
+
+    /**
+     * Compress the bytecode of several classes
+     *
+     * @param classes the bytecode of each class, keyed by class name
+     * @return the compressed bundle
+     */
+    public static byte[] pack(Map<String, byte[]> classes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeInt(classes.size());
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+        } catch (IOException e) {
+            //Writing to a ByteArrayOutputStream can't fail.
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decompress a bundle created with {@link #pack(Map)}
+     *
+     * @param bundle the compressed bundle
+     * @return the bytecode of each class, keyed by class name
+     * @throws IOException the bundle is corrupt
+     */
+    public static Map<String, byte[]> unpack(byte[] bundle) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(bundle)))) {
+            int count = in.readInt();
+            Map<String, byte[]> classes = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                classes.put(name, b);
+            }
+            return classes;
+        }
+    }
+}
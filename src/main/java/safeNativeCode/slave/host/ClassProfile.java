@@ -0,0 +1,54 @@
+package safeNativeCode.slave.host;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ClassProfile is the list of classes a slave loaded from the host while running a workload.
+ * Giving a profile to a new slave with {@link AbstractSlave#setClassProfile(ClassProfile)} loads those classes before they are needed.
+ */
+public class ClassProfile {
+    private final List<String> classes;
+
+    /**
+     * Create a profile
+     *
+     * @param classes the names of the classes to load, in the order they should be loaded
+     */
+    public ClassProfile(List<String> classes) {
+        this.classes = Collections.unmodifiableList(new ArrayList<>(classes));
+    }
+
+    /**
+     * @return the names of the classes in this profile, in the order they should be loaded
+     */
+    public List<String> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Write this profile to a file, one class per line
+     *
+     * @param file the file to write
+     * @throws IOException the file could not be written
+     */
+    public void save(Path file) throws IOException {
+        Files.write(file, classes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read a profile written by {@link #save(Path)}
+     *
+     * @param file the file to read
+     * @return the profile stored in the file
+     * @throws IOException the file could not be read
+     */
+    public static ClassProfile load(Path file) throws IOException {
+        return new ClassProfile(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+}
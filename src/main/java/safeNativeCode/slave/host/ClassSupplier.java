@@ -6,30 +6,86 @@ import safeNativeCode.utils.Utils;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.rmi.RemoteException;
-import java.rmi.server.UnicastRemoteObject;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
  * An object that is responsible for replying to requests for information about classes
  */
-public class ClassSupplier extends UnicastRemoteObject implements IClassSupplier {
-    private transient LinkedHashSet<ClassLoader> classLoaders;
-
-    public ClassSupplier(LinkedHashSet<ClassLoader> classLoaders) throws RemoteException {
-        super(0, null, port -> {
-            ServerSocket ss = new ServerSocket();
-            ss.setReuseAddress(true);
-            ss.bind(new InetSocketAddress(port));
-            return ss;
-        });
+public class ClassSupplier implements IClassSupplier {
+    private volatile LinkedHashSet<ClassLoader> classLoaders;
+    private volatile ClassArchive archive;
+    private volatile SlaveMetrics metrics;
+    private boolean closed = false;
+
+    public ClassSupplier(LinkedHashSet<ClassLoader> classLoaders) {
+        this.classLoaders = classLoaders;
+        this.archive = ClassArchive.of(classLoaders);
+    }
+
+    ClassSupplier(LinkedHashSet<ClassLoader> classLoaders, SlaveMetrics metrics) {
+        this(classLoaders);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Record the classes served from now on in different metrics, used when a standby takes over
+     */
+    void setMetrics(SlaveMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Serve the classes of other classloaders from now on, used when a standby's process is taken over by a slave with
+     * its own classloaders
+     */
+    void setClassLoaders(LinkedHashSet<ClassLoader> classLoaders) {
         this.classLoaders = classLoaders;
+        invalidate();
+    }
+
+    /**
+     * Switch to the archive for the current classloaders, this must be called whenever a classloader is added
+     */
+    public synchronized void invalidate() {
+        if (closed) return;
+        ClassArchive previous = archive;
+        archive = ClassArchive.of(classLoaders);
+        previous.release();
+    }
+
+    /**
+     * Stop using the shared archive, once no process is connected to the supplier anymore. Classes requested afterwards
+     * are still served, but are no longer stored in the archive.
+     */
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        archive.release();
     }
 
     public byte[] getByteCode(String clazz) {
+        long start = System.nanoTime();
+        try {
+            byte[] bytecode = archive.get(clazz, this::readByteCode);
+            SlaveMetrics metrics = this.metrics;
+            if (metrics != null) metrics.classServed(bytecode, System.nanoTime() - start);
+            return bytecode;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private byte[] readByteCode(String clazz) {
         for (ClassLoader loader : classLoaders) {
             InputStream is = loader.getResourceAsStream(clazz.replace(".", File.separator) + ".class");
             if (is != null) {
@@ -42,4 +98,64 @@ public class ClassSupplier extends UnicastRemoteObject implements IClassSupplier
         }
         return null;
     }
+
+    @Override
+    public byte[] getPackageByteCode(String clazz) {
+        List<String> classes = new ArrayList<>();
+        classes.add(clazz);
+        classes.addAll(archive.getPackage(clazz, this::findPackage));
+        return getByteCodes(classes.toArray(new String[0]));
+    }
+
+    private List<String> findPackage(String clazz) {
+        for (ClassLoader loader : classLoaders) {
+            URL url = loader.getResource(clazz.replace('.', '/') + ".class");
+            if (url != null) {
+                return siblings(clazz, url);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public byte[] getByteCodes(String[] classes) {
+        Map<String, byte[]> bytecode = new LinkedHashMap<>();
+        for (String clazz : classes) {
+            //Look every class up again, since a class in the same package may be shadowed by an earlier classloader.
+            byte[] b = bytecode.containsKey(clazz) ? null : getByteCode(clazz);
+            if (b != null) bytecode.put(clazz, b);
+        }
+        return ClassBundle.pack(bytecode);
+    }
+
+    /**
+     * Find the names of the classes stored next to a class, in the same directory or in the same package of a jar
+     */
+    private static List<String> siblings(String clazz, URL url) {
+        int split = clazz.lastIndexOf('.');
+        String prefix = split == -1 ? "" : clazz.substring(0, split + 1);
+        List<String> names = new ArrayList<>();
+        try {
+            if ("file".equals(url.getProtocol())) {
+                File[] files = new File(url.toURI()).getParentFile().listFiles((dir, name) -> name.endsWith(".class"));
+                if (files != null) {
+                    for (File file : files) {
+                        names.add(prefix + file.getName().substring(0, file.getName().length() - 6));
+                    }
+                }
+            } else if ("jar".equals(url.getProtocol())) {
+                String directory = prefix.replace('.', '/');
+                JarFile jar = ((JarURLConnection) url.openConnection()).getJarFile();
+                for (JarEntry entry : Collections.list(jar.entries())) {
+                    String name = entry.getName();
+                    if (name.startsWith(directory) && name.endsWith(".class") && name.indexOf('/', directory.length()) == -1) {
+                        names.add(name.substring(0, name.length() - 6).replace('/', '.'));
+                    }
+                }
+            }
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            //Fall back to sending only the requested class.
+        }
+        return names;
+    }
 }
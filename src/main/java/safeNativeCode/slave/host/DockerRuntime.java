@@ -0,0 +1,191 @@
+package safeNativeCode.slave.host;
+
+import safeNativeCode.utils.Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DockerRuntime does the work of DockerSlave that only has to be done once per host, rather than every time a container is
+ * started. The image is pulled and inspected once, the user to run containers as is looked up once, and containers are
+ * created ahead of time, so that starting a slave only has to start a container that already exists.
+ * <p>
+ * Created containers are kept in a pool for each distinct set of arguments to docker create, since the mounts and command of
+ * a container can't be changed once it has been created. They are removed when the host exits.
+ */
+public class DockerRuntime {
+    static final String DOCKER_IMAGE = "openjdk:13";
+    private static final long REMOVE_TIMEOUT = 10000;
+
+    private static final ExecutorService CREATOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DockerRuntime-create");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Map<List<String>, Deque<String>> pools = new ConcurrentHashMap<>();
+    private static volatile int poolSize = 1;
+    //Set once the host is exiting, after which no more containers are created for the pools.
+    private static volatile boolean closed = false;
+    private static boolean imageReady = false;
+    private static List<String> user;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(DockerRuntime::removePooled));
+    }
+
+    /**
+     * Set how many stopped containers are kept ready for each kind of DockerSlave. By default one is kept, which is enough for
+     * a slave to be restarted straight away. With a pool size of 0 every container is created when it is needed.
+     *
+     * @param size the amount of containers to keep ready
+     */
+    public static void setPoolSize(int size) {
+        if (size < 0) throw new IllegalArgumentException("The pool size can't be negative");
+        poolSize = size;
+    }
+
+    /**
+     * Make sure the image is available, pulling it the first time this is called if it isn't
+     */
+    static synchronized void prepareImage() throws IOException, InterruptedException {
+        if (imageReady) return;
+        if (!inspect()) {
+            new ProcessBuilder("docker", "pull", DOCKER_IMAGE).inheritIO().start().waitFor();
+        }
+        imageReady = inspect();
+    }
+
+    private static boolean inspect() throws IOException, InterruptedException {
+        Process inspect = new ProcessBuilder("docker", "image", "inspect", "--format", "{{.Id}}", DOCKER_IMAGE).start();
+        Utils.readStream(inspect.getInputStream());
+        Utils.readStream(inspect.getErrorStream());
+        return inspect.waitFor() == 0;
+    }
+
+    /**
+     * @return the arguments to docker create that run the container as the user running the host
+     */
+    static synchronized List<String> getUser() throws IOException {
+        if (user == null) {
+            if (Utils.isUnix()) {
+                String username = System.getProperty("user.name");
+                String uid = new String(Utils.readStream(Runtime.getRuntime().exec("id -u " + username).getInputStream())).trim();
+                String gid = new String(Utils.readStream(Runtime.getRuntime().exec("id -g " + username).getInputStream())).trim();
+                user = Arrays.asList("--user", uid + ":" + gid);
+            } else {
+                user = Arrays.asList("--user", System.getProperty("user.name"));
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Take a created container from the pool, creating one if the pool is empty. The pool is refilled in the background.
+     *
+     * @param options the options to docker create, followed by the image and the command to run
+     * @return the ID of the container, or null if it could not be created
+     */
+    static String take(List<String> options) throws IOException, InterruptedException {
+        Deque<String> pool = pools.computeIfAbsent(options, o -> new ConcurrentLinkedDeque<>());
+        String containerID = pool.pollFirst();
+        if (containerID == null) {
+            containerID = create(options);
+        }
+        try {
+            CREATOR.execute(() -> refill(options, pool));
+        } catch (RejectedExecutionException e) {
+            //The host is exiting, so the pool is not refilled.
+        }
+        return containerID;
+    }
+
+    /**
+     * Wait for the containers that are being created in the background to be ready, for example to fill the pool before
+     * slaves are needed.
+     */
+    public static void awaitPool() throws InterruptedException {
+        try {
+            //Containers are created one after another, so everything asked for before this is done once it has run.
+            CREATOR.submit(() -> {
+            }).get();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the amount of created containers that are ready to be started, for every kind of DockerSlave together
+     */
+    public static int getPooledCount() {
+        return pools.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    private static void refill(List<String> options, Deque<String> pool) {
+        try {
+            while (!closed && pool.size() < poolSize) {
+                String containerID = create(options);
+                if (containerID == null) return;
+                pool.addLast(containerID);
+            }
+        } catch (IOException | InterruptedException e) {
+            //Containers are created when they are needed instead.
+        }
+    }
+
+    private static String create(List<String> options) throws IOException, InterruptedException {
+        List<String> args = new ArrayList<>(Arrays.asList("docker", "create"));
+        args.addAll(options);
+        Process process = new ProcessBuilder(args).start();
+        String containerID = new String(Utils.readStream(process.getInputStream())).trim();
+        String error = new String(Utils.readStream(process.getErrorStream())).trim();
+        process.waitFor();
+        if (!error.isEmpty()) {
+            System.out.println("An error occurred while creating docker container:");
+            System.out.println(error);
+            return null;
+        }
+        return containerID;
+    }
+
+    /**
+     * Stop a container straight away, rather than giving it time to shut down
+     *
+     * @param containerID the container to kill
+     */
+    static void kill(String containerID) throws IOException, InterruptedException {
+        Process kill = new ProcessBuilder("docker", "kill", containerID).start();
+        Utils.readStream(kill.getInputStream());
+        Utils.readStream(kill.getErrorStream());
+        kill.waitFor();
+    }
+
+    private static void removePooled() {
+        closed = true;
+        //Let the container being created finish, so that it is removed along with the rest of the pool.
+        CREATOR.shutdown();
+        try {
+            CREATOR.awaitTermination(REMOVE_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            //Remove the containers that are ready now.
+        }
+        List<String> args = new ArrayList<>(Arrays.asList("docker", "rm", "-f"));
+        pools.values().forEach(args::addAll);
+        if (args.size() == 3) return;
+        try {
+            new ProcessBuilder(args).start().waitFor();
+        } catch (IOException | InterruptedException e) {
+            //The containers are left behind, they can be removed with docker container prune.
+        }
+    }
+}
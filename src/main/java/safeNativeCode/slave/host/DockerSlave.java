@@ -1,11 +1,15 @@
 package safeNativeCode.slave.host;
 
-import safeNativeCode.utils.Utils;
+import safeNativeCode.slave.process.ProcessMain;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.rmi.RemoteException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -17,7 +21,6 @@ import java.util.List;
 public class DockerSlave extends AbstractSlave {
     private Process process;
     private String containerID;
-    private static final String DOCKER_IMAGE = "openjdk:13";
     private List<Path> pathsToShare;
 
     public DockerSlave(ClassLoader... classLoaders) {
@@ -49,18 +52,12 @@ public class DockerSlave extends AbstractSlave {
 
     protected void start() {
         try {
-            //Pull first so we can easily get status
-            new ProcessBuilder("docker", "pull", DOCKER_IMAGE).inheritIO().start().waitFor();
+            //Make sure the image is there first so we can easily get status
+            DockerRuntime.prepareImage();
             if (hasTimedOut()) return;
-            List<String> args = new ArrayList<>(Arrays.asList("docker", "create", "--rm", "--network", "host"));
-            if (Utils.isUnix()) {
-                String username = System.getProperty("user.name");
-                String uid = new String(Utils.readStream(Runtime.getRuntime().exec("id -u " + username).getInputStream())).trim();
-                String gid = new String(Utils.readStream(Runtime.getRuntime().exec("id -g " + username).getInputStream())).trim();
-                args.addAll(Arrays.asList("--user", uid + ":" + gid));
-            } else {
-                args.addAll(Arrays.asList("--user", System.getProperty("user.name")));
-            }
+            //The container keeps stdin open, since that is where it is told how to connect.
+            List<String> args = new ArrayList<>(Arrays.asList("-i", "--rm", "--network", "host"));
+            args.addAll(DockerRuntime.getUser());
             for (String cp : getClassPath()) {
                 if (Files.exists(Paths.get(cp))) {
                     args.addAll(Arrays.asList("-v", cp + ":/safeNativeCode/" + cp + ":ro"));
@@ -74,29 +71,55 @@ public class DockerSlave extends AbstractSlave {
                     System.out.println("Path: "+path+" does not exist, skipping mount!");
                 }
             });
-            args.add(DOCKER_IMAGE);
+            args.add(DockerRuntime.DOCKER_IMAGE);
             args.addAll(Arrays.asList(getJavaCommandArgs("java", "/safeNativeCode/")));
-            Process process = new ProcessBuilder(args).start();
-            process.waitFor();
-            containerID = new String(Utils.readStream(process.getInputStream())).trim();
-            String error = new String(Utils.readStream(process.getErrorStream())).trim();
-            if (!error.isEmpty()) {
-                System.out.println("An error occurred while starting docker container:");
-                System.out.println(error);
-                return;
+            containerID = DockerRuntime.take(args);
+            if (containerID == null) return;
+            this.process = new ProcessBuilder("docker", "start", "-a", "-i", containerID)
+                    .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start();
+            //The container was created before it was known which slave would use it, so it is told how to connect once started.
+            Writer endpoint = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            for (String arg : super.getSlaveArgs()) {
+                endpoint.write(arg + "\n");
             }
-            this.process = new ProcessBuilder("docker", "start", "-a", "-i", containerID).inheritIO().start();
+            endpoint.flush();
             setupRegistry();
         } catch (IOException | InterruptedException ex) {
             throw new RuntimeException(ex);
         }
     }
 
+    /**
+     * Containers are created ahead of time, so they read the transport and endpoint from stdin instead of their command
+     */
+    @Override
+    protected String[] getSlaveArgs() {
+        return new String[]{ProcessMain.READ_ARGS};
+    }
+
+    @Override
+    void adopt(AbstractSlave standby) throws RemoteException {
+        //Taken before the standby is detached, which lets go of its container.
+        process = ((DockerSlave) standby).process;
+        containerID = ((DockerSlave) standby).containerID;
+        super.adopt(standby);
+    }
+
+    @Override
+    void detach() {
+        super.detach();
+        process = null;
+        containerID = null;
+    }
+
     @Override
-    public void terminate() {
+    protected void stopProcess() {
         if (!isAlive()) return;
         try {
-            new ProcessBuilder("docker", "stop", containerID).start().waitFor();
+            //The slave has nothing to clean up, so there is no point in waiting out docker stop's grace period.
+            DockerRuntime.kill(containerID);
             waitForExit();
         } catch (InterruptedException | IOException e) {
             throw new RuntimeException(e);
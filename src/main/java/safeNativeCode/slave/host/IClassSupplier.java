@@ -15,4 +15,20 @@ public interface IClassSupplier extends Remote {
      * @return the retrieved bytecode, or null if it does not exist
      */
     byte[] getByteCode(String clazz) throws RemoteException;
+
+    /**
+     * Retrieve the bytecode for a class, along with every other class in the same package and location
+     *
+     * @param clazz the name of a class to retrieve bytecode for
+     * @return a bundle created by {@link ClassBundle#pack}, which does not contain clazz if it does not exist
+     */
+    byte[] getPackageByteCode(String clazz) throws RemoteException;
+
+    /**
+     * Retrieve the bytecode for several classes at once
+     *
+     * @param classes the names of the classes to retrieve bytecode for
+     * @return a bundle created by {@link ClassBundle#pack}, which only contains the classes that exist
+     */
+    byte[] getByteCodes(String[] classes) throws RemoteException;
 }
@@ -1,8 +1,11 @@
 package safeNativeCode.slave.host;
 
+import safeNativeCode.slave.transport.SlaveTransport;
+
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.rmi.RemoteException;
 
 /**
  * A ProcessSlave runs a safeNativeCode.slave in another process on the same machine that the host process is executed on.
@@ -23,6 +26,17 @@ public class ProcessSlave extends AbstractSlave {
         super(timeLimit, args, classLoaders);
         start();
     }
+
+    /**
+     * Create a safeNativeCode.slave that runs inside another process, communicating with it over a specific transport
+     *
+     * @param transport    the transport used to communicate with the safeNativeCode.slave, such as a UnixSocketTransport
+     * @param classLoaders a list of classloaders to supply classes to the safeNativeCode.slave
+     */
+    public ProcessSlave(int timeLimit, String[] args, SlaveTransport transport, ClassLoader... classLoaders) {
+        super(timeLimit, args, transport, classLoaders);
+        start();
+    }
     
     protected ProcessBuilder makeProcessBuilder() throws IOException {
         Path javaProcess = Paths.get(System.getProperty("java.home"), "bin", "java");
@@ -30,7 +44,7 @@ public class ProcessSlave extends AbstractSlave {
     }
     
     protected void start() {
-        if (process != null) terminate();
+        if (process != null) stopProcess();
         try {
             ProcessBuilder pb=makeProcessBuilder();
             process=pb.start();
@@ -43,7 +57,21 @@ public class ProcessSlave extends AbstractSlave {
     }
 
     @Override
-    public void terminate() {
+    void adopt(AbstractSlave standby) throws RemoteException {
+        //Taken before the standby is detached, which lets go of its process.
+        process = ((ProcessSlave) standby).process;
+        super.adopt(standby);
+    }
+
+    @Override
+    void detach() {
+        super.detach();
+        process = null;
+    }
+
+    @Override
+    protected void stopProcess() {
+        if (process == null) return;
         try {
             process.destroyForcibly().waitFor();
         } catch (InterruptedException e) {
@@ -0,0 +1,324 @@
+package safeNativeCode.slave.host;
+
+import safeNativeCode.slave.transport.SlaveTransport;
+import safeNativeCode.utils.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SlaveMetrics records where the time of a slave goes, from waiting for the slave to be free, to making calls on it, to serving
+ * it classes. Recording only takes a few additions per call, so it is always on. Metrics about the slave process itself, such
+ * as how long calls took to execute there, are copied to the host by {@link #refresh()}, so that reading them never has to wait
+ * for the slave. They are reset whenever the process is restarted. The metrics of a slave can be published over JMX with
+ * {@link #register(String)}, which refreshes them every second until they are unregistered.
+ */
+public class SlaveMetrics implements SlaveMetricsMBean {
+    //Calls taking this many objects or more are counted together, which only happens for pipelines.
+    private static final int MAX_ARITY = 10;
+    private static final long REFRESH_INTERVAL = 1000;
+    private static final int PROCESS_METRICS = 4 + LatencyHistogram.COUNTS;
+    private static final ScheduledExecutorService REFRESHER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "SlaveMetrics-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AbstractSlave slave;
+    //The slave's own transport is used again whenever it restarts, so it is always counted.
+    private final SlaveTransport transport;
+    //The transport of the last standby that took over, and the bytes counted by the ones before it, or -1 if one did not count them.
+    private SlaveTransport adopted;
+    private long adoptedWritten = 0;
+    private long adoptedRead = 0;
+    private final LongAdder[] calls = new LongAdder[MAX_ARITY + 1];
+    private final LongAdder failedCalls = new LongAdder();
+    private final LatencyHistogram waits = new LatencyHistogram();
+    private final LatencyHistogram callTimes = new LatencyHistogram();
+    private final LatencyHistogram classLookups = new LatencyHistogram();
+    private final LongAdder classesServed = new LongAdder();
+    private final LongAdder classBytes = new LongAdder();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    //The metrics of the slave process as they were last copied, kept for when the process has exited.
+    private volatile long[] process = new long[PROCESS_METRICS];
+    private volatile LatencyHistogram executions = new LatencyHistogram();
+    private volatile ObjectName name;
+    private ScheduledFuture<?> refresher;
+
+    SlaveMetrics(AbstractSlave slave, SlaveTransport transport) {
+        this.slave = slave;
+        this.transport = transport;
+        for (int i = 0; i < calls.length; i++) {
+            calls[i] = new LongAdder();
+        }
+    }
+
+    void waited(long nanos) {
+        waits.record(nanos);
+    }
+
+    void called(int arity, long nanos) {
+        calls[Math.min(arity, MAX_ARITY)].increment();
+        callTimes.record(nanos);
+    }
+
+    void failed() {
+        failedCalls.increment();
+    }
+
+    void classServed(byte[] bytecode, long nanos) {
+        classLookups.record(nanos);
+        if (bytecode != null) {
+            classesServed.increment();
+            classBytes.add(bytecode.length);
+        }
+    }
+
+    void restarted() {
+        restarts.increment();
+    }
+
+    void timedOut() {
+        timeouts.increment();
+    }
+
+    /**
+     * Count the bytes sent over the transport of a standby that has taken over, along with those sent over the slave's own
+     */
+    synchronized void adopt(SlaveTransport transport) {
+        //The process of the previous standby has died, so its counts won't change anymore.
+        if (adopted != null) {
+            adoptedWritten = add(adoptedWritten, adopted.getBytesWritten());
+            adoptedRead = add(adoptedRead, adopted.getBytesRead());
+        }
+        adopted = transport;
+    }
+
+    /**
+     * @return the amount of calls made on the slave
+     */
+    @Override
+    public long getCalls() {
+        long total = 0;
+        for (LongAdder count : calls) total += count.sum();
+        return total;
+    }
+
+    /**
+     * @return the amount of calls made on the slave by the amount of remote objects they took, with the last element counting
+     * every call that took ten or more
+     */
+    @Override
+    public long[] getCallsByArity() {
+        return Arrays.stream(calls).mapToLong(LongAdder::sum).toArray();
+    }
+
+    /**
+     * @return the amount of calls that threw, because the lambda threw or the slave could not be reached
+     */
+    @Override
+    public long getFailedCalls() {
+        return failedCalls.sum();
+    }
+
+    /**
+     * @return how long calls waited for the objects they use and for a worker to be free before they were made
+     */
+    public LatencyHistogram getWaitTimes() {
+        return waits;
+    }
+
+    @Override
+    public double getMeanWaitTime() {
+        return waits.getMean();
+    }
+
+    @Override
+    public double getWaitTime99() {
+        return waits.getPercentile(0.99);
+    }
+
+    /**
+     * @return how long calls took as seen by the host, including sending the call and its result
+     */
+    public LatencyHistogram getCallTimes() {
+        return callTimes;
+    }
+
+    @Override
+    public double getMeanCallTime() {
+        return callTimes.getMean();
+    }
+
+    @Override
+    public double getCallTime99() {
+        return callTimes.getPercentile(0.99);
+    }
+
+    /**
+     * @return how long calls took to execute in the slave process as of the last refresh, not counting the time taken to send them
+     */
+    public LatencyHistogram getExecutionTimes() {
+        return executions;
+    }
+
+    @Override
+    public double getMeanExecutionTime() {
+        return executions.getMean();
+    }
+
+    @Override
+    public double getExecutionTime99() {
+        return executions.getPercentile(0.99);
+    }
+
+    /**
+     * @return the amount of bytes the host has sent to the processes of the slave, or -1 if the transport does not count them
+     */
+    @Override
+    public synchronized long getBytesSent() {
+        return add(add(adoptedWritten, transport.getBytesWritten()), adopted == null ? 0 : adopted.getBytesWritten());
+    }
+
+    /**
+     * @return the amount of bytes the host has received from the processes of the slave, or -1 if the transport does not count them
+     */
+    @Override
+    public synchronized long getBytesReceived() {
+        return add(add(adoptedRead, transport.getBytesRead()), adopted == null ? 0 : adopted.getBytesRead());
+    }
+
+    /**
+     * Add two byte counts, either of which is -1 if a transport does not count them
+     */
+    private static long add(long a, long b) {
+        return a < 0 || b < 0 ? -1 : a + b;
+    }
+
+    /**
+     * @return how long the host took to look up the bytecode of each class the slave asked for, including classes it did not have
+     */
+    public LatencyHistogram getClassLookupTimes() {
+        return classLookups;
+    }
+
+    /**
+     * @return the amount of classes sent to the processes of the slave
+     */
+    @Override
+    public long getClassesServed() {
+        return classesServed.sum();
+    }
+
+    /**
+     * @return the amount of bytes of bytecode sent to the processes of the slave
+     */
+    @Override
+    public long getClassBytesServed() {
+        return classBytes.sum();
+    }
+
+    /**
+     * @return the amount of requests for classes the slave process had made to the host as of the last refresh
+     */
+    @Override
+    public long getClassFetches() {
+        return process[1];
+    }
+
+    /**
+     * @return the time the slave process had spent waiting for classes from the host as of the last refresh, in milliseconds
+     */
+    @Override
+    public double getClassFetchTime() {
+        return process[3] / 1000000d;
+    }
+
+    /**
+     * @return the amount of times the process of the slave has been restarted, or replaced by a standby, after it died
+     */
+    @Override
+    public long getRestarts() {
+        return restarts.sum();
+    }
+
+    /**
+     * @return the amount of times the slave ran out of time
+     */
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getFailovers() {
+        return slave.getFailoverCount();
+    }
+
+    /**
+     * @return the amount of objects stored on the slave process as of the last refresh
+     */
+    @Override
+    public long getObjectCount() {
+        return process[0];
+    }
+
+    /**
+     * Copy the metrics of the slave process to the host. If the process has exited, the metrics last copied are kept.
+     */
+    public void refresh() {
+        try {
+            if (slave.isAlive()) {
+                long[] process = slave.getProcessMetrics();
+                executions = LatencyHistogram.of(Arrays.copyOfRange(process, 4, PROCESS_METRICS));
+                this.process = process;
+            }
+        } catch (IOException | RuntimeException e) {
+            //The process has just exited, so its last metrics are kept.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Publish these metrics as an MBean on the platform MBean server, under safeNativeCode:type=Slave,name=...
+     * The MBean holds on to the slave, so it should be unregistered once the slave is no longer used.
+     *
+     * @param name the name to publish the slave under, which must be unique among registered slaves
+     * @return the name of the MBean
+     */
+    public synchronized ObjectName register(String name) throws JMException {
+        unregister();
+        ObjectName objectName = new ObjectName("safeNativeCode:type=Slave,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.name = objectName;
+        refresher = REFRESHER.scheduleWithFixedDelay(this::refresh, 0, REFRESH_INTERVAL, TimeUnit.MILLISECONDS);
+        return objectName;
+    }
+
+    /**
+     * Remove the MBean published by {@link #register(String)}, if there is one
+     */
+    public synchronized void unregister() throws JMException {
+        if (name != null) {
+            refresher.cancel(false);
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d calls (%d failed), wait %.3fms, call %.3fms, execution %.3fms, %d classes served, %d restarts",
+                getCalls(), getFailedCalls(), getMeanWaitTime(), getMeanCallTime(), getMeanExecutionTime(), getClassesServed(), getRestarts());
+    }
+}
@@ -0,0 +1,44 @@
+package safeNativeCode.slave.host;
+
+/**
+ * The attributes of a slave published over JMX by {@link SlaveMetrics#register(String)}. Times are in milliseconds.
+ */
+public interface SlaveMetricsMBean {
+    long getCalls();
+
+    long[] getCallsByArity();
+
+    long getFailedCalls();
+
+    double getMeanWaitTime();
+
+    double getWaitTime99();
+
+    double getMeanCallTime();
+
+    double getCallTime99();
+
+    double getMeanExecutionTime();
+
+    double getExecutionTime99();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getClassesServed();
+
+    long getClassBytesServed();
+
+    long getClassFetches();
+
+    double getClassFetchTime();
+
+    long getRestarts();
+
+    long getTimeouts();
+
+    long getFailovers();
+
+    long getObjectCount();
+}
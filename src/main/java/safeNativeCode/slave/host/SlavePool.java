@@ -0,0 +1,230 @@
+package safeNativeCode.slave.host;
+
+import safeNativeCode.slave.Functions;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A SlavePool keeps a number of started slaves ready for use, so that callers do not have to wait for a new process to start.
+ * Slaves are handed out with {@link #acquire()}, and should be handed back with {@link #release(AbstractSlave)} once they are no
+ * longer needed, at which point every object stored on them is deleted. Acquired slaves count towards the size of the pool
+ * until they are released, so a replacement is only started once a slave is found to be unusable.
+ *
+ * @param <S> the type of slave this pool holds
+ */
+public class SlavePool<S extends AbstractSlave> implements AutoCloseable {
+    private static final long HEALTH_CHECK_INTERVAL = 1000;
+
+    private final int size;
+    private final Supplier<S> factory;
+    private final Functions.Runnable warmUp;
+    private final LinkedBlockingDeque<S> ready = new LinkedBlockingDeque<>();
+    //Slaves that are being started to fill the pool, which count towards its size before they are ready.
+    private final AtomicInteger starting = new AtomicInteger();
+    //Slaves that have been acquired and not released yet, which also count towards the size of the pool.
+    private final AtomicInteger acquired = new AtomicInteger();
+    private final ExecutorService starter = Executors.newCachedThreadPool(daemonThreads("SlavePool-starter"));
+    private final ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor(daemonThreads("SlavePool-monitor"));
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong acquireTime = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Create a pool of slaves
+     *
+     * @param size    the amount of slaves to keep started and ready for use
+     * @param factory used to create new slaves, such as {@code ProcessSlave::new}
+     */
+    public SlavePool(int size, Supplier<S> factory) {
+        this(size, factory, null);
+    }
+
+    /**
+     * Create a pool of slaves, running a function on every slave before it is handed out
+     *
+     * @param size    the amount of slaves to keep started and ready for use
+     * @param factory used to create new slaves, such as {@code ProcessSlave::new}
+     * @param warmUp  a function executed on every new slave, used to load the classes a workload needs ahead of time
+     */
+    public SlavePool(int size, Supplier<S> factory, Functions.Runnable warmUp) {
+        this.size = size;
+        this.factory = factory;
+        this.warmUp = warmUp;
+        for (int i = 0; i < size; i++) {
+            replenish();
+        }
+        monitor.scheduleWithFixedDelay(this::checkHealth, HEALTH_CHECK_INTERVAL, HEALTH_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Take a slave from the pool, starting a new one if none are ready
+     *
+     * @return a started slave, which is owned by the caller until it is released
+     */
+    public S acquire() {
+        if (closed) throw new IllegalStateException("SlavePool has been closed");
+        long start = System.nanoTime();
+        S slave;
+        while ((slave = ready.pollFirst()) != null) {
+            if (isUsable(slave)) {
+                hits.incrementAndGet();
+                break;
+            }
+            discard(slave);
+        }
+        if (slave == null) {
+            misses.incrementAndGet();
+            slave = create();
+        }
+        acquired.incrementAndGet();
+        //Start replacements for any slaves that were found dead.
+        replenish();
+        acquireTime.addAndGet(System.nanoTime() - start);
+        return slave;
+    }
+
+    /**
+     * Hand a slave back to the pool. Every object stored on the slave is deleted.
+     * If the slave has died, timed out, or the pool is already full, it is terminated instead.
+     *
+     * @param slave the slave to return
+     */
+    public void release(S slave) {
+        acquired.decrementAndGet();
+        if (!closed && isUsable(slave) && ready.size() < size) {
+            try {
+                slave.clear();
+                ready.offerLast(slave);
+                return;
+            } catch (RuntimeException | IOException e) {
+                //The slave died while being cleaned, so it can't be reused.
+            }
+        }
+        discard(slave);
+        //The slave could not be returned, so start another one in its place.
+        replenish();
+    }
+
+    /**
+     * @return the amount of acquisitions that were served by an already started slave
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the amount of acquisitions that had to wait for a new slave to be started
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the average time taken by {@link #acquire()}, in milliseconds
+     */
+    public double getAverageAcquireTime() {
+        long count = hits.get() + misses.get();
+        return count == 0 ? 0 : acquireTime.get() / 1000000d / count;
+    }
+
+    /**
+     * @return the amount of slaves that are currently started and waiting to be acquired
+     */
+    public int getReadyCount() {
+        return ready.size();
+    }
+
+    /**
+     * Terminate every slave that is waiting in the pool. Slaves that are currently acquired are left running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        monitor.shutdownNow();
+        //Slaves that are still starting are terminated as soon as they are ready.
+        starter.shutdown();
+        S slave;
+        while ((slave = ready.pollFirst()) != null) {
+            discard(slave);
+        }
+    }
+
+    private S create() {
+        S slave = factory.get();
+        if (warmUp != null) {
+            slave.run(warmUp);
+        }
+        return slave;
+    }
+
+    private void replenish() {
+        while (true) {
+            if (closed) return;
+            int pending = starting.get();
+            if (ready.size() + pending + acquired.get() >= size) return;
+            if (starting.compareAndSet(pending, pending + 1)) break;
+        }
+        try {
+            starter.execute(() -> {
+                try {
+                    S slave = create();
+                    if (closed || ready.size() >= size) {
+                        discard(slave);
+                    } else {
+                        ready.offerLast(slave);
+                    }
+                } finally {
+                    //Only once the slave is ready, so that it is never missing from both counts.
+                    starting.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //The pool has been closed.
+            starting.decrementAndGet();
+        }
+    }
+
+    private void checkHealth() {
+        for (S slave : ready) {
+            if (!isUsable(slave) && ready.remove(slave)) {
+                discard(slave);
+                replenish();
+            }
+        }
+    }
+
+    private boolean isUsable(S slave) {
+        try {
+            return !slave.hasTimedOut() && slave.isAlive();
+        } catch (IOException | InterruptedException e) {
+            return false;
+        }
+    }
+
+    private void discard(S slave) {
+        try {
+            slave.terminate();
+        } catch (RuntimeException e) {
+            //The slave is already gone.
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
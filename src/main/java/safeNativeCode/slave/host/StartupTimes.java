@@ -0,0 +1,63 @@
+package safeNativeCode.slave.host;
+
+/**
+ * StartupTimes breaks down how long it took to start the process of a slave, from launching the process until it could be
+ * called, along with how long the first call took. Times are in milliseconds. Times measured across both processes use the
+ * system clock, so they are only accurate to a millisecond or so.
+ */
+public class StartupTimes {
+    private final double launch;
+    private final double supplierLookup;
+    private final double bind;
+    private final double total;
+    private final double firstCall;
+
+    StartupTimes(double launch, double supplierLookup, double bind, double total, double firstCall) {
+        this.launch = launch;
+        this.supplierLookup = supplierLookup;
+        this.bind = bind;
+        this.total = total;
+        this.firstCall = firstCall;
+    }
+
+    /**
+     * @return the time from launching the process until the JVM of the slave started running its main method
+     */
+    public double getLaunchTime() {
+        return launch;
+    }
+
+    /**
+     * @return the time from entering main until the slave received the host's class supplier
+     */
+    public double getSupplierLookupTime() {
+        return supplierLookup;
+    }
+
+    /**
+     * @return the time from receiving the class supplier until the host was connected to the slave
+     */
+    public double getBindTime() {
+        return bind;
+    }
+
+    /**
+     * @return the time from launching the process until the host was connected to it
+     */
+    public double getTotalTime() {
+        return total;
+    }
+
+    /**
+     * @return the time taken by the first call made once the slave was connected, or -1 if no call has been made yet
+     */
+    public double getFirstCallTime() {
+        return firstCall;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("launch %.1fms, supplier lookup %.1fms, bind %.1fms, total %.1fms, first call %.1fms",
+                launch, supplierLookup, bind, total, firstCall);
+    }
+}
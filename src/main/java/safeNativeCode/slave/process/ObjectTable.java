@@ -0,0 +1,136 @@
+package safeNativeCode.slave.process;
+
+/**
+ * ObjectTable stores the objects held by a slave by the id of their handle. Ids are kept in a plain long array using open
+ * addressing, so storing an object does not allocate anything besides the object itself.
+ * Ids must not be 0, which marks an empty slot.
+ * The table is split into stripes selected by the low bits of the id, each with its own lock, so that calls on
+ * different objects rarely wait for each other.
+ */
+class ObjectTable {
+    private static final int STRIPES = 16;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    ObjectTable() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    Object get(long id) {
+        return stripe(id).get(id);
+    }
+
+    void put(long id, Object value) {
+        stripe(id).put(id, value);
+    }
+
+    /**
+     * Remove an object
+     *
+     * @param id the id of the object
+     * @return the object that was removed, or null if there was none
+     */
+    Object remove(long id) {
+        return stripe(id).remove(id);
+    }
+
+    void clear() {
+        for (Stripe stripe : stripes) stripe.clear();
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) size += stripe.size();
+        return size;
+    }
+
+    private Stripe stripe(long id) {
+        //Ids end in a sequence number, so consecutive objects land in different stripes.
+        return stripes[(int) id & (STRIPES - 1)];
+    }
+
+    private static class Stripe {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private Object[] values = new Object[INITIAL_CAPACITY];
+        private int size = 0;
+
+        synchronized Object get(long id) {
+            int i = find(id);
+            return keys[i] == 0 ? null : values[i];
+        }
+
+        synchronized void put(long id, Object value) {
+            int i = find(id);
+            if (keys[i] == 0) {
+                keys[i] = id;
+                size++;
+            }
+            values[i] = value;
+            //Keep the table at most half full, so that probe sequences stay short.
+            if (size * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+        }
+
+        synchronized Object remove(long id) {
+            int i = find(id);
+            if (keys[i] == 0) return null;
+            Object value = values[i];
+            //Move later entries of the probe sequence back, so that lookups never stop early at the slot that was emptied.
+            int mask = keys.length - 1;
+            int empty = i;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                if (((j - home) & mask) >= ((j - empty) & mask)) {
+                    keys[empty] = keys[j];
+                    values[empty] = values[j];
+                    empty = j;
+                }
+            }
+            keys[empty] = 0;
+            values[empty] = null;
+            size--;
+            return value;
+        }
+
+        synchronized void clear() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new Object[INITIAL_CAPACITY];
+            size = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private int find(long id) {
+            int mask = keys.length - 1;
+            int i = slot(id);
+            while (keys[i] != 0 && keys[i] != id) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+        private int slot(long id) {
+            //Ids are sequential, so mix the bits to spread neighbouring ids across the table.
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new long[capacity];
+            values = new Object[capacity];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int j = find(oldKeys[i]);
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+    }
+}
@@ -4,6 +4,7 @@ import safeNativeCode.exceptions.SlaveException;
 import safeNativeCode.slave.Functions;
 import safeNativeCode.slave.InternalSlave;
 import safeNativeCode.slave.RemoteObject;
+import safeNativeCode.slave.host.ClassBundle;
 import safeNativeCode.slave.host.IClassSupplier;
 import safeNativeCode.utils.Utils;
 
@@ -11,14 +12,46 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ProcessClassloader facilitates loading classes from the main process, using RMI. We retrieve a BytecodeSupplier from the host, and use it to load classes.
  */
 public class ProcessClassloader extends SecureClassLoader {
     private static IClassSupplier bytecodeSupplier;
+    //Bytecode that has been sent by the host but not defined yet, removed once the class is defined.
+    private static final Map<String, byte[]> bytecodeCache = new ConcurrentHashMap<>();
+    //Packages are fetched whole, so the cache would otherwise keep the bytecode of every class that is never loaded.
+    private static final long MAX_CACHED_BYTES = 8 << 20;
+    private static final AtomicLong cachedBytes = new AtomicLong();
+    private static final AtomicLong remoteFetches = new AtomicLong();
+    private static final AtomicLong fetchedBytes = new AtomicLong();
+    private static final AtomicLong fetchTime = new AtomicLong();
+    private static final AtomicLong localHits = new AtomicLong();
+    //Classes the host reported it does not have, which are only looked for in the parent from then on.
+    private static final Set<String> missing = ConcurrentHashMap.newKeySet();
+    private static final AtomicLong localResolutions = new AtomicLong();
+    private static final AtomicLong missingHits = new AtomicLong();
+    private static final Queue<String> recorded = new ConcurrentLinkedQueue<>();
+    private static volatile boolean recording = false;
+    private static volatile long supplied;
+    private static final Object preloadLock = new Object();
+    //The amount of preloads that have not finished, guarded by preloadLock.
+    private static int preloading;
+
+    static {
+        //Otherwise getClassLoadingLock returns the loader itself, and threads loading different classes wait on each other.
+        registerAsParallelCapable();
+    }
 
     public ProcessClassloader(ClassLoader parent) {
         super(parent);
@@ -26,21 +59,223 @@ public class ProcessClassloader extends SecureClassLoader {
 
     @Override
     public Class<?> loadClass(String name) throws ClassNotFoundException {
-        if (bytecodeSupplier != null) {
+        //Calls may be executing on several threads, so make sure a class is only ever defined once.
+        synchronized (getClassLoadingLock(name)) {
+            Class<?> c = findLoadedClass(name);
+            if (c != null) {
+                return c;
+            }
+            //Core classes and our own classes always come from the parent, so there is no need to ask the host for them.
+            if (bytecodeSupplier == null || Utils.isJavaClass(name) || name.startsWith("safeNativeCode.")) {
+                localResolutions.incrementAndGet();
+            } else if (missing.contains(name)) {
+                missingHits.incrementAndGet();
+            } else {
+                byte[] b = take(name);
+                if (b != null) {
+                    localHits.incrementAndGet();
+                } else {
+                    try {
+                        //Fetch the whole package, since the classes a class refers to are usually in the same package.
+                        Map<String, byte[]> classes = ClassBundle.unpack(fetch(() -> bytecodeSupplier.getPackageByteCode(name)));
+                        b = classes.remove(name);
+                        cache(classes);
+                    } catch (IOException e) {
+                        // If we lose connection to the main JVM, just throw a class not found exception.
+                        throw new ClassNotFoundException("Unable to load: " + name, e);
+                    }
+                }
+                if (b != null) {
+                    c = super.defineClass(name, b, 0, b.length);
+                    if (recording) recorded.add(name);
+                    return c;
+                }
+                missing.add(name);
+            }
+            return super.loadClass(name);
+        }
+    }
+
+    /**
+     * Fetch the bytecode for several classes from the host in a single request, so that loading them later needs no request
+     *
+     * @param classes the names of the classes to fetch
+     * @throws IOException the host could not be reached
+     */
+    public static void prefetch(Collection<String> classes) throws IOException {
+        String[] wanted = classes.stream().filter(name -> !bytecodeCache.containsKey(name) && !missing.contains(name)).toArray(String[]::new);
+        if (bytecodeSupplier != null && wanted.length > 0) {
+            Map<String, byte[]> found = ClassBundle.unpack(fetch(() -> bytecodeSupplier.getByteCodes(wanted)));
+            cache(found);
+            for (String name : wanted) {
+                if (!found.containsKey(name)) {
+                    missing.add(name);
+                }
+            }
+        }
+    }
+
+    /**
+     * Load classes ahead of time on a background thread, without initializing them.
+     * The bytecode for every class is fetched from the host in a single request before any of them are defined.
+     *
+     * @param classes the names of the classes to load, in the order they should be loaded
+     */
+    public static void preload(List<String> classes) {
+        synchronized (preloadLock) {
+            preloading++;
+        }
+        Thread preloader = new Thread(() -> {
             try {
-                byte[] b = bytecodeSupplier.getByteCode(name);
-                if (b == null || Utils.isJavaClass(name) || name.startsWith("safeNativeCode.")) return super.loadClass(name);
-                return super.defineClass(name, b, 0, b.length);
+                prefetch(classes);
+                for (String name : classes) {
+                    try {
+                        Class.forName(name, false, ClassLoader.getSystemClassLoader());
+                    } catch (ClassNotFoundException | LinkageError e) {
+                        //The class has changed since the profile was recorded, it will be reported if it is actually used.
+                    }
+                }
             } catch (IOException e) {
-                // If we lose connection to the main JVM, just throw a class not found exception.
-                throw new ClassNotFoundException("Unable to load: " + name, e);
+                //The host is gone, so there is nothing to preload for.
+            } finally {
+                synchronized (preloadLock) {
+                    preloading--;
+                    preloadLock.notifyAll();
+                }
             }
+        }, "ProcessClassloader-preload");
+        preloader.setDaemon(true);
+        preloader.start();
+    }
+
+    /**
+     * Wait for every preload started by {@link #preload(List)} to finish
+     *
+     * @param timeout the longest to wait, in milliseconds
+     * @return true if every preload has finished, false if the time ran out first
+     */
+    public static boolean awaitPreload(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized (preloadLock) {
+            while (preloading > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                preloadLock.wait(remaining);
+            }
+            return true;
         }
-        return super.loadClass(name);
+    }
+
+    /**
+     * Start or stop recording the names of the classes that are loaded from the host
+     *
+     * @param record true to start recording, false to stop
+     */
+    public static void setRecording(boolean record) {
+        recording = record;
+    }
+
+    /**
+     * @return the names of the classes loaded from the host while recording, in the order they were loaded
+     */
+    public static List<String> getRecorded() {
+        return new ArrayList<>(recorded);
+    }
+
+    /**
+     * @return the amount of requests made to the host for bytecode
+     */
+    public static long getRemoteFetches() {
+        return remoteFetches.get();
+    }
+
+    /**
+     * @return the amount of bytes of bytecode received from the host
+     */
+    public static long getFetchedBytes() {
+        return fetchedBytes.get();
+    }
+
+    /**
+     * @return the time spent waiting for bytecode from the host, in nanoseconds
+     */
+    public static long getFetchTime() {
+        return fetchTime.get();
+    }
+
+    /**
+     * @return the amount of classes that were defined from bytecode fetched by an earlier request
+     */
+    public static long getLocalHits() {
+        return localHits.get();
+    }
+
+    /**
+     * @return the amount of bytes of bytecode that have been fetched from the host for classes that have not been defined yet
+     */
+    public static long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    /**
+     * @return the amount of classes that were loaded from the parent without asking the host, because they are core classes or our own classes
+     */
+    public static long getLocalResolutions() {
+        return localResolutions.get();
+    }
+
+    /**
+     * @return the amount of classes that were loaded from the parent without asking the host, because the host did not have them before
+     */
+    public static long getMissingHits() {
+        return missingHits.get();
+    }
+
+    /**
+     * Forget which classes the host does not have, so that they are requested again. Used when the host gains a classloader.
+     */
+    public static void clearMissing() {
+        missing.clear();
+    }
+
+    private static byte[] fetch(Request request) throws IOException {
+        long start = System.nanoTime();
+        byte[] bundle = request.send();
+        fetchTime.addAndGet(System.nanoTime() - start);
+        remoteFetches.incrementAndGet();
+        if (bundle != null) fetchedBytes.addAndGet(bundle.length);
+        return bundle;
+    }
+
+    private interface Request {
+        byte[] send() throws IOException;
+    }
+
+    private static byte[] take(String name) {
+        byte[] b = bytecodeCache.remove(name);
+        if (b != null) cachedBytes.addAndGet(-b.length);
+        return b;
+    }
+
+    private static void cache(Map<String, byte[]> classes) {
+        classes.forEach((name, b) -> {
+            //Once the cache is full, the bytecode is dropped, and fetched again if the class is ever loaded.
+            if (cachedBytes.addAndGet(b.length) > MAX_CACHED_BYTES || bytecodeCache.putIfAbsent(name, b) != null) {
+                cachedBytes.addAndGet(-b.length);
+            }
+        });
     }
 
     // Due to the fact that this is used across modules (ProcessClassloader and ProcessSlave exist inside different ClassLoaders), we need to make it public.
     public static void setByteCodeSupplier(IClassSupplier bytecodeSupplier) {
         ProcessClassloader.bytecodeSupplier = bytecodeSupplier;
+        supplied = System.currentTimeMillis();
+    }
+
+    /**
+     * @return when the host's class supplier was set, in milliseconds since the epoch
+     */
+    public static long getSupplierTime() {
+        return supplied;
     }
 }
\ No newline at end of file
@@ -1,202 +1,386 @@
 package safeNativeCode.slave.process;
 
 import safeNativeCode.slave.Functions;
+import safeNativeCode.slave.Pipeline;
+import safeNativeCode.slave.ProcessControl;
 import safeNativeCode.slave.RemoteObject;
-import safeNativeCode.slave.InternalSlave;
 import safeNativeCode.exceptions.SlaveException;
 import safeNativeCode.exceptions.UnknownObjectException;
-import safeNativeCode.slave.host.IClassSupplier;
+import safeNativeCode.slave.transport.SlaveTransport;
+import safeNativeCode.utils.LatencyHistogram;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.rmi.NotBoundException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
-import java.rmi.registry.LocateRegistry;
-import java.rmi.registry.Registry;
-import java.rmi.server.UnicastRemoteObject;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * ProcessSlave is the class implementing features for a safeNativeCode.slave
  */
-public class ProcessMain extends UnicastRemoteObject implements InternalSlave {
+public class ProcessMain implements ProcessControl {
 
-    private transient Map<ProcessObject, Object> localObjects = new HashMap<>();
-
-    public ProcessMain(int registryPort) throws IOException, InterruptedException, NotBoundException {
-        Registry registry = LocateRegistry.createRegistry(registryPort);
-        while (!Arrays.asList(registry.list()).contains("bytecodeLookup")) {
-            Thread.sleep(10);
-        }
-        IClassSupplier r = (IClassSupplier) registry.lookup("bytecodeLookup");
-        ProcessClassloader.setByteCodeSupplier(r);
-        registry.rebind("safeNativeCode/slave/process", this);
-    }
+    //The object table uses null for objects that don't exist, so nulls returned from lambdas are stored as this instead.
+    private static final Object NULL = new Object();
+    /**
+     * Passed instead of the transport and endpoint to read them from stdin, one per line, once the process has started
+     */
+    public static final String READ_ARGS = "-";
+    //When main was entered, in milliseconds since the epoch.
+    private static long started;
+    private transient ObjectTable localObjects = new ObjectTable();
+    //Set by the host when it connects, so that handles from an earlier process are rejected instead of finding a different object.
+    //Processes used without a host pick one at random.
+    private volatile int epoch = 1 + new Random().nextInt((1 << (64 - ProcessObject.SEQUENCE_BITS)) - 1);
+    private final AtomicLong sequence = new AtomicLong();
+    //How long each call took to execute, not counting the time taken to send it and its result.
+    private final LatencyHistogram executions = new LatencyHistogram();
+    private volatile boolean leased;
+    private volatile long leaseExpiry;
+    private volatile long leaseLength;
+    private Thread leaseChecker;
 
     @Override
     public void run(Functions.Runnable lambda) {
+        long start = System.nanoTime();
         try {
             lambda.run();
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <T> RemoteObject<T> call(Functions.Supplier<T> lambda) {
+        long start = System.nanoTime();
         try {
             return wrap(lambda.get());
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <T> void call(RemoteObject<T> obj, Functions.Consumer<T> lambda) throws RemoteException {
+        long start = System.nanoTime();
         try {
             lambda.accept(get(obj));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T> RemoteObject<R> call(RemoteObject<T> t, Functions.Function<R, T> lambda) throws RemoteException {
+        long start = System.nanoTime();
         try {
             return wrap(lambda.apply(get(t)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, Functions.BiFunction<R, T1, T2> lambda) throws RemoteException {
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, Functions.TriFunction<R, T1, T2, T3> lambda) throws RemoteException {
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, Functions.QuadFunction<R, T1, T2, T3, T4> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, Functions.FiveFunction<R, T1, T2, T3, T4, T5> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, Functions.SixFunction<R, T1, T2, T3, T4, T5, T6> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5), get(t6)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, Functions.SevenFunction<R, T1, T2, T3, T4, T5, T6, T7> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5), get(t6), get(t7)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, Functions.EightFunction<R, T1, T2, T3, T4, T5, T6, T7, T8> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5), get(t6), get(t7), get(t8)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, Functions.NineFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5), get(t6), get(t7), get(t8), get(t9)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @Override
     public <R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> RemoteObject<R> call(RemoteObject<T1> t1, RemoteObject<T2> t2, RemoteObject<T3> t3, RemoteObject<T4> t4, RemoteObject<T5> t5, RemoteObject<T6> t6, RemoteObject<T7> t7, RemoteObject<T8> t8, RemoteObject<T9> t9, RemoteObject<T10> t10, Functions.TenFunction<R, T1, T2, T3, T4, T5, T6, T7, T8, T9, T10> lambda) throws RemoteException {
 
+        long start = System.nanoTime();
         try {
             return wrap(lambda.accept(get(t1), get(t2), get(t3), get(t4), get(t5), get(t6), get(t7), get(t8), get(t9), get(t10)));
         } catch (UnknownObjectException ex) {
             throw ex;
         } catch (Throwable ex) {
             throw new SlaveException(wrap(ex));
+        } finally {
+            executions.record(System.nanoTime() - start);
         }
     }
 
     @SuppressWarnings("unchecked")
     public <T> T get(RemoteObject<T> obj) throws UnknownObjectException {
-        if (!localObjects.containsKey(obj)) {
+        Object value = isLocal(obj) ? localObjects.get(((ProcessObject<?>) obj).getId()) : null;
+        if (value == null) {
             throw new UnknownObjectException();
         }
-        return (T) localObjects.get(obj);
+        return value == NULL ? null : (T) value;
     }
 
     public void remove(RemoteObject obj) throws UnknownObjectException {
-        if (!localObjects.containsKey(obj)) {
+        if (!isLocal(obj) || localObjects.remove(((ProcessObject<?>) obj).getId()) == null) {
             throw new UnknownObjectException();
         }
-        localObjects.remove(obj);
+    }
+
+    @Override
+    public void removeAll(RemoteObject<?>[] objects) {
+        for (RemoteObject<?> obj : objects) {
+            if (isLocal(obj)) localObjects.remove(((ProcessObject<?>) obj).getId());
+        }
+    }
+
+    boolean owns(ProcessObject<?> obj) {
+        return isLocal(obj) && localObjects.get(obj.getId()) != null;
+    }
+
+    private boolean isLocal(RemoteObject<?> obj) {
+        return obj instanceof ProcessObject && ((ProcessObject<?>) obj).getEpoch() == epoch;
+    }
+
+    @Override
+    public int getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+
+    @Override
+    public void clear() {
+        localObjects.clear();
+    }
+
+    @Override
+    public synchronized void renewLease(long millis) {
+        //Use the monotonic clock, so that changes to the wall clock neither expire the lease early nor extend it.
+        leaseExpiry = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        leaseLength = millis;
+        leased = true;
+        if (leaseChecker == null) {
+            leaseChecker = new Thread(() -> {
+                while (true) {
+                    try {
+                        Thread.sleep(Math.max(1, Math.min(1000, leaseLength / 10)));
+                    } catch (InterruptedException e) {
+                        //Keep checking, there is nothing else for this thread to do.
+                    }
+                    synchronized (ProcessMain.this) {
+                        if (leased && System.nanoTime() - leaseExpiry > 0) {
+                            //The host has stopped renewing the lease, so nothing can use the objects anymore.
+                            localObjects.clear();
+                            leased = false;
+                        }
+                    }
+                }
+            }, "ProcessMain-lease");
+            leaseChecker.setDaemon(true);
+            leaseChecker.start();
+        }
+    }
+
+    @Override
+    public Object[] runPipeline(Pipeline.Step[] steps) {
+        long start = System.nanoTime();
+        try {
+            return executePipeline(steps);
+        } finally {
+            executions.record(System.nanoTime() - start);
+        }
+    }
+
+    private Object[] executePipeline(Pipeline.Step[] steps) {
+        //Find the last step that uses each result, so that results can be dropped as soon as they are no longer needed.
+        int[] lastUse = new int[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            for (Object input : steps[i].getInputs()) {
+                if (input instanceof Integer) lastUse[(Integer) input] = i;
+            }
+        }
+        Object[] results = new Object[steps.length];
+        Object[] outputs = new Object[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            Object[] inputs = steps[i].getInputs();
+            Object[] args = new Object[inputs.length];
+            for (int j = 0; j < inputs.length; j++) {
+                args[j] = inputs[j] instanceof Integer ? results[(Integer) inputs[j]] : get((RemoteObject<?>) inputs[j]);
+            }
+            try {
+                results[i] = steps[i].apply(args);
+            } catch (UnknownObjectException ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new SlaveException(wrap(ex));
+            }
+            if (steps[i].isFetched()) outputs[i] = results[i];
+            for (Object input : inputs) {
+                if (input instanceof Integer && lastUse[(Integer) input] == i && !steps[(Integer) input].isKept()) {
+                    results[(Integer) input] = null;
+                }
+            }
+        }
+        //Only store results once every step has succeeded, so that a failing pipeline leaves nothing behind.
+        for (int i = 0; i < steps.length; i++) {
+            if (steps[i].isKept()) outputs[i] = wrap(results[i]);
+        }
+        return outputs;
+    }
+
+    @Override
+    public void recordClasses(boolean record) {
+        ProcessClassloader.setRecording(record);
+    }
+
+    @Override
+    public List<String> getRecordedClasses() {
+        return ProcessClassloader.getRecorded();
+    }
+
+    @Override
+    public void preloadClasses(List<String> classes) {
+        ProcessClassloader.preload(classes);
+    }
+
+    @Override
+    public boolean awaitPreload(long timeout) {
+        try {
+            return ProcessClassloader.awaitPreload(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void forgetMissingClasses() {
+        ProcessClassloader.clearMissing();
     }
 
     @Override
@@ -205,12 +389,39 @@ public class ProcessMain extends UnicastRemoteObject implements InternalSlave {
     }
 
     private <T> RemoteObject<T> wrap(T object) {
-        ProcessObject<T> r = new ProcessObject<>(this);
-        localObjects.put(r, object);
+        ProcessObject<T> r = new ProcessObject<>(((long) epoch << ProcessObject.SEQUENCE_BITS) | sequence.incrementAndGet(), this);
+        localObjects.put(r.getId(), object == null ? NULL : object);
         return r;
     }
 
-    public static void main(String[] args) throws InterruptedException, NotBoundException, IOException {
-        new ProcessMain(Integer.parseInt(args[args.length - 1]));
+    @Override
+    public long[] getStartupTimes() {
+        return new long[]{started, ProcessClassloader.getSupplierTime()};
+    }
+
+    @Override
+    public long[] getProcessMetrics() {
+        long[] executed = executions.getCounts();
+        long[] metrics = new long[4 + executed.length];
+        metrics[0] = localObjects.size();
+        metrics[1] = ProcessClassloader.getRemoteFetches();
+        metrics[2] = ProcessClassloader.getFetchedBytes();
+        metrics[3] = ProcessClassloader.getFetchTime();
+        System.arraycopy(executed, 0, metrics, 4, executed.length);
+        return metrics;
+    }
+
+    public static void main(String[] args) throws ReflectiveOperationException, IOException, InterruptedException {
+        started = System.currentTimeMillis();
+        if (args.length > 0 && args[args.length - 1].equals(READ_ARGS)) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            args = new String[]{in.readLine(), in.readLine()};
+        }
+        //The host passes the transport to use, followed by the endpoint it is listening on.
+        SlaveTransport transport = (SlaveTransport) Class.forName(args[args.length - 2]).getDeclaredConstructor().newInstance();
+        ProcessMain main = new ProcessMain();
+        //Only the slave process has a local slave, a ProcessMain made in the host for testing must not change how handles resolve.
+        ProcessObject.setLocal(main);
+        transport.serve(args[args.length - 1], main);
     }
 }
@@ -1,23 +1,42 @@
 package safeNativeCode.slave.process;
 
 import safeNativeCode.slave.Functions;
+import safeNativeCode.slave.ProcessControl;
 import safeNativeCode.slave.RemoteObject;
 import safeNativeCode.slave.Slave;
-import safeNativeCode.slave.InternalSlave;
 
+import java.io.ObjectStreamException;
+import java.lang.ref.WeakReference;
 import java.rmi.RemoteException;
-import java.util.Objects;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * ProcessObject represents an object on a safeNativeCode.slave
+ * ProcessObject represents an object on a safeNativeCode.slave.
+ * Once every handle to an object in a process has been garbage collected, the object is removed from the slave by
+ * {@link ReleaseQueue}, unless the handle is in the slave that holds the object.
+ * Handles are identified by a 64 bit id, made of the epoch of the slave process that created the object followed by a sequence
+ * number. The host gives every slave process it starts a different epoch, so ids are unique among all the slaves of a host,
+ * and handles from a slave that has been restarted can be recognised.
  */
 public class ProcessObject<T> implements RemoteObject<T> {
-    private UUID uuid;
-    private InternalSlave slave;
+    static final int SEQUENCE_BITS = 40;
+    private static final int EPOCH_MASK = (1 << (64 - SEQUENCE_BITS)) - 1;
+    //The epoch last given to a slave process by this host, starting at random so that hosts are unlikely to share epochs.
+    private static final AtomicInteger epochs = new AtomicInteger(new Random().nextInt());
 
-    ProcessObject(InternalSlave remote) {
-        this.uuid = UUID.randomUUID();
+    //The slave running in this process, if this is a slave process.
+    private static volatile ProcessMain local;
+    //Handles for the same epoch share one slave, so that it is only stored and sent once rather than once per handle.
+    private static final Map<Integer, WeakReference<ProcessControl>> slaves = new ConcurrentHashMap<>();
+
+    private long id;
+    private ProcessControl slave;
+
+    ProcessObject(long id, ProcessControl remote) {
+        this.id = id;
         this.slave = remote;
     }
 
@@ -41,6 +60,7 @@ public class ProcessObject<T> implements RemoteObject<T> {
 
     @Override
     public void remove() throws RemoteException {
+        ReleaseQueue.forget(this);
         slave.remove(this);
     }
 
@@ -48,17 +68,60 @@ public class ProcessObject<T> implements RemoteObject<T> {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        ProcessObject<?> that = (ProcessObject<?>) o;
-        return Objects.equals(uuid, that.uuid);
+        return id == ((ProcessObject<?>) o).id;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(uuid);
+        return Long.hashCode(id);
+    }
+
+    /**
+     * @return the epoch of the slave process that holds this object
+     */
+    public int getEpoch() {
+        return epoch(id);
+    }
+
+    /**
+     * @return an epoch that no other slave process started by this host has, unless it has started 2^24 of them
+     */
+    public static int newEpoch() {
+        while (true) {
+            int epoch = epochs.incrementAndGet() & EPOCH_MASK;
+            if (epoch != 0) return epoch;
+        }
+    }
+
+    static int epoch(long id) {
+        return (int) (id >>> SEQUENCE_BITS);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    ProcessControl getSlave() {
+        return slave;
+    }
+
+    /**
+     * Use a single handle for each object in a process, so that the object is only released once all of them are gone.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        ProcessMain main = local;
+        //Handles passed back to the slave holding the object must never remove it, the host still has its own handle.
+        if (main != null && main.owns(this)) {
+            return this;
+        }
+        ProcessControl received = slave;
+        ProcessControl shared = slaves.compute(getEpoch(), (epoch, ref) -> ref != null && ref.get() != null ? ref : new WeakReference<>(received)).get();
+        slave = shared != null ? shared : received;
+        //Only the host releases objects, a slave passed a handle to an object on another slave leaves it to the host's handle.
+        return main == null ? ReleaseQueue.track(this) : this;
     }
 
-    @SuppressWarnings("deprecation")
-    protected void finalize() throws RemoteException {
-        this.remove();
+    static void setLocal(ProcessMain main) {
+        local = main;
     }
 }
@@ -0,0 +1,102 @@
+package safeNativeCode.slave.process;
+
+import safeNativeCode.slave.ProcessControl;
+import safeNativeCode.slave.RemoteObject;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReleaseQueue removes objects from slaves once the handles to them have been garbage collected.
+ * Releases are collected on a background thread and sent to each slave in batches, instead of making a call for every handle
+ * from the finalizer thread.
+ */
+class ReleaseQueue {
+    //How long to wait for more handles to be collected before sending a batch.
+    private static final long BATCH_INTERVAL = 50;
+
+    private static final ReferenceQueue<ProcessObject<?>> queue = new ReferenceQueue<>();
+    private static final Map<Long, Handle> handles = new ConcurrentHashMap<>();
+
+    static {
+        Thread releaser = new Thread(ReleaseQueue::release, "ProcessObject-release");
+        releaser.setDaemon(true);
+        releaser.start();
+    }
+
+    /**
+     * Start tracking a handle that has been received by this process
+     *
+     * @param object the handle
+     * @return the handle to use, which is an existing handle to the same object if there is one
+     */
+    static ProcessObject<?> track(ProcessObject<?> object) {
+        while (true) {
+            Handle handle = handles.get(object.getId());
+            ProcessObject<?> existing = handle == null ? null : handle.get();
+            if (existing != null) {
+                return existing;
+            }
+            //A collected handle that has not been released yet is replaced, so the object is not released after all.
+            Handle replacement = new Handle(object);
+            if (handle == null ? handles.putIfAbsent(object.getId(), replacement) == null : handles.replace(object.getId(), handle, replacement)) {
+                return object;
+            }
+        }
+    }
+
+    /**
+     * Stop tracking a handle, because its object has been removed explicitly
+     *
+     * @param object the handle
+     */
+    static void forget(ProcessObject<?> object) {
+        handles.remove(object.getId());
+    }
+
+    private static void release() {
+        while (true) {
+            try {
+                Reference<?> first = queue.remove();
+                Thread.sleep(BATCH_INTERVAL);
+                Map<ProcessControl, List<Long>> batches = new HashMap<>();
+                for (Reference<?> ref = first; ref != null; ref = queue.poll()) {
+                    Handle handle = (Handle) ref;
+                    //Only release objects that have not been removed, or received again through a new handle.
+                    if (handles.remove(handle.id, handle)) {
+                        batches.computeIfAbsent(handle.slave, s -> new ArrayList<>()).add(handle.id);
+                    }
+                }
+                batches.forEach((slave, ids) -> {
+                    //Every handle in a batch shares the same slave, so the slave is only sent once.
+                    RemoteObject<?>[] objects = ids.stream().map(id -> new ProcessObject<>(id, slave)).toArray(RemoteObject<?>[]::new);
+                    try {
+                        slave.removeAll(objects);
+                    } catch (RemoteException | RuntimeException e) {
+                        //The slave is gone, and its objects with it.
+                    }
+                });
+            } catch (InterruptedException e) {
+                //The releaser runs for as long as the process does.
+            }
+        }
+    }
+
+    private static class Handle extends WeakReference<ProcessObject<?>> {
+        final long id;
+        final ProcessControl slave;
+
+        Handle(ProcessObject<?> object) {
+            super(object, queue);
+            this.id = object.getId();
+            this.slave = object.getSlave();
+        }
+    }
+}
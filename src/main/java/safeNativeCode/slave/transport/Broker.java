@@ -0,0 +1,259 @@
+package safeNativeCode.slave.transport;
+
+import safeNativeCode.slave.Slave;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A Broker accepts the connections of every slave process started by the host on a single listening socket, rather than
+ * each slave listening on a socket of its own. Every slave is given a token, which its process sends as soon as it has
+ * connected, and the connection is handed to the transport waiting for that token.
+ * <p>
+ * A single thread accepts connections, and another releases what each slave was given once its process has exited.
+ * Tokens are read on a thread per connection, and a connection that doesn't send its token in time is closed, so that a
+ * process that connects and then stops can't hold up other slaves.
+ */
+class Broker implements Closeable {
+    //How often to check that slave processes are still alive.
+    private static final long MONITOR_INTERVAL = 1000;
+    //How long a new connection has to send its token.
+    private static final long HANDSHAKE_TIMEOUT = 10000;
+    //Tokens can't be guessed, so that only the processes started by the host can connect as its slaves.
+    private static final SecureRandom TOKENS = new SecureRandom();
+
+    private final Listener listener;
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService monitor;
+    private final ExecutorService handshakes;
+
+    /**
+     * Start accepting connections
+     *
+     * @param name     the name of the broker, used for its threads
+     * @param listener the socket to accept connections on
+     */
+    Broker(String name, Listener listener) {
+        this.listener = listener;
+        Thread acceptor = new Thread(this::accept, name + "-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, name + "-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::releaseExited, MONITOR_INTERVAL, MONITOR_INTERVAL, TimeUnit.MILLISECONDS);
+        handshakes = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, name + "-handshake");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Create a token for a slave to connect with
+     *
+     * @return the token the processes of the slave should send when connecting
+     */
+    static String newToken() {
+        byte[] bytes = new byte[16];
+        TOKENS.nextBytes(bytes);
+        StringBuilder token = new StringBuilder();
+        for (byte b : bytes) {
+            token.append(String.format("%02x", b));
+        }
+        return token.toString();
+    }
+
+    /**
+     * Wait for a process of a slave to connect
+     *
+     * @param token   the token of the slave
+     * @param owner   the slave, which is checked to still be alive while waiting
+     * @param release run once the process of the slave has exited, to release what was set up for it
+     * @return the connection, with the token already read from it
+     */
+    Connection await(String token, Slave owner, Runnable release) throws IOException, InterruptedException {
+        Registration registration = registrations.computeIfAbsent(token, t -> new Registration());
+        CompletableFuture<Connection> connection = new CompletableFuture<>();
+        synchronized (registration) {
+            //The previous process of the slave has been replaced.
+            registration.release();
+            registration.owner = owner;
+            registration.pending = connection;
+            //The registration may have been removed while its last process was gone.
+            registrations.put(token, registration);
+        }
+        while (true) {
+            try {
+                Connection c = connection.get(MONITOR_INTERVAL, TimeUnit.MILLISECONDS);
+                synchronized (registration) {
+                    registration.release = release;
+                }
+                return c;
+            } catch (TimeoutException e) {
+                //A slave process that failed to start would otherwise be waited for forever.
+                if (!owner.isAlive()) {
+                    synchronized (registration) {
+                        registration.pending = null;
+                    }
+                    release.run();
+                    throw new IOException("The slave process exited before connecting");
+                }
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            Connection connection;
+            try {
+                connection = listener.accept();
+            } catch (IOException e) {
+                //The listener has been closed.
+                return;
+            }
+            try {
+                handshakes.execute(() -> handshake(connection));
+            } catch (RejectedExecutionException e) {
+                //The broker has been closed.
+                connection.close();
+                return;
+            }
+        }
+    }
+
+    private void handshake(Connection connection) {
+        //Closing the connection makes the read fail, which works for every kind of socket.
+        ScheduledFuture<?> timeout = monitor.schedule(connection::close, HANDSHAKE_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            String token = new DataInputStream(connection.in).readUTF();
+            if (!timeout.cancel(false)) {
+                //The connection was closed just as the token arrived.
+                return;
+            }
+            Registration registration = registrations.get(token);
+            CompletableFuture<Connection> pending = null;
+            if (registration != null) {
+                synchronized (registration) {
+                    pending = registration.pending;
+                    registration.pending = null;
+                }
+            }
+            if (pending == null || !pending.complete(connection)) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void releaseExited() {
+        registrations.forEach((token, registration) -> {
+            synchronized (registration) {
+                //Slaves whose process has exited are registered again if they are restarted.
+                if (registration.pending == null && registration.releaseExited()) {
+                    registrations.remove(token, registration);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        monitor.shutdownNow();
+        handshakes.shutdownNow();
+        try {
+            listener.close();
+        } catch (IOException e) {
+            //Already closed.
+        }
+    }
+
+    /**
+     * Send the token of a slave, which must be the first thing written on a new connection to a broker
+     */
+    static void sendToken(OutputStream out, String token) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeUTF(token);
+        data.flush();
+    }
+
+    private static class Registration {
+        Slave owner;
+        CompletableFuture<Connection> pending;
+        Runnable release;
+
+        /**
+         * Release what was set up for the last process of the slave, if it has exited
+         *
+         * @return true if the process has exited
+         */
+        boolean releaseExited() {
+            try {
+                if (owner != null && owner.isAlive()) return false;
+            } catch (IOException | InterruptedException e) {
+                //Treat a slave that can't be checked as having exited.
+            }
+            release();
+            return true;
+        }
+
+        void release() {
+            if (release != null) {
+                release.run();
+                release = null;
+            }
+        }
+    }
+
+    /**
+     * An accepted connection
+     */
+    static class Connection implements Closeable {
+        final InputStream in;
+        final OutputStream out;
+        private final Closeable socket;
+
+        Connection(Closeable socket, InputStream in, OutputStream out) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Already closed.
+            }
+        }
+    }
+
+    /**
+     * A socket that accepts connections
+     */
+    interface Listener extends Closeable {
+        Connection accept() throws IOException;
+    }
+}
@@ -0,0 +1,30 @@
+package safeNativeCode.slave.transport;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A Codec writes the requests and responses sent by a {@link UnixSocketTransport}. Values are written to a Java serialization
+ * stream, so a codec may write the values it knows about with the primitive methods of the stream and hand everything else
+ * to {@link ObjectOutput#writeObject(Object)}, which keeps slaves and remote objects working as they do without the codec.
+ * <p>
+ * The slave process creates the codec using its no argument constructor, so implementations must provide one.
+ */
+public interface Codec {
+    /**
+     * Write a value
+     *
+     * @param out   the stream to write to
+     * @param value the value, which may be null
+     */
+    void write(ObjectOutput out, Object value) throws IOException;
+
+    /**
+     * Read a value written by {@link #write(ObjectOutput, Object)}
+     *
+     * @param in the stream to read from
+     * @return the value
+     */
+    Object read(ObjectInput in) throws IOException, ClassNotFoundException;
+}
@@ -0,0 +1,348 @@
+package safeNativeCode.slave.transport;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A codec with a compact binary form for primitives, boxed primitives, strings, primitive arrays, object arrays, and the
+ * common collections ArrayList, HashMap and HashSet. Java serialization writes a description of the class of each of these
+ * before the value itself, which is larger than the value for most arguments and results.
+ * Everything else, including subclasses of the collections above, falls back to Java serialization.
+ * <p>
+ * Arrays and collections written by the codec keep their identity within a message, so that shared and cyclic structures
+ * survive, but they are not shared with the objects inside values written with Java serialization.
+ * <p>
+ * Lengths are read from the other process, so the reader never trusts them with more memory than the writer could have
+ * needed. Primitive and object arrays are only written compactly up to 1024 elements, and byte arrays, long strings and
+ * collections grow as their data is read, so a length that was made up fails once the data runs out rather than by running
+ * out of memory.
+ */
+public class CompactCodec implements Codec {
+    //Primitive and object arrays longer than this are left to Java serialization, which copies them in bulk.
+    private static final int MAX_COMPACT_ARRAY = 1024;
+    //The most a byte array, long string or list read by the codec starts out with, before it grows as its data is read.
+    private static final int MAX_PREALLOCATED = 65536;
+    //The longest string that always fits in the modified UTF-8 of writeUTF.
+    private static final int MAX_UTF = 65535 / 3;
+
+    private static final byte NULL = 0;
+    private static final byte SERIALIZED = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte BYTE = 4;
+    private static final byte SHORT = 5;
+    private static final byte CHAR = 6;
+    private static final byte INT = 7;
+    private static final byte LONG = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DOUBLE = 10;
+    private static final byte STRING = 11;
+    private static final byte LONG_STRING = 12;
+    private static final byte BYTE_ARRAY = 13;
+    private static final byte BOOLEAN_ARRAY = 14;
+    private static final byte SHORT_ARRAY = 15;
+    private static final byte CHAR_ARRAY = 16;
+    private static final byte INT_ARRAY = 17;
+    private static final byte LONG_ARRAY = 18;
+    private static final byte FLOAT_ARRAY = 19;
+    private static final byte DOUBLE_ARRAY = 20;
+    private static final byte OBJECT_ARRAY = 21;
+    private static final byte ARRAY_LIST = 22;
+    private static final byte HASH_MAP = 23;
+    private static final byte HASH_SET = 24;
+    private static final byte REFERENCE = 25;
+
+    @Override
+    public void write(ObjectOutput out, Object value) throws IOException {
+        new Writer(out).write(value);
+    }
+
+    @Override
+    public Object read(ObjectInput in) throws IOException, ClassNotFoundException {
+        return new Reader(in).read();
+    }
+
+    private static class Writer {
+        private final ObjectOutput out;
+        //The arrays and collections written so far, numbered in the order they were written.
+        private Map<Object, Integer> written;
+
+        Writer(ObjectOutput out) {
+            this.out = out;
+        }
+
+        void write(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            Class<?> c = value.getClass();
+            if (c == Integer.class) {
+                out.writeByte(INT);
+                out.writeInt((Integer) value);
+            } else if (c == Long.class) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+            } else if (c == Boolean.class) {
+                out.writeByte((Boolean) value ? TRUE : FALSE);
+            } else if (c == Double.class) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+            } else if (c == String.class) {
+                writeString((String) value);
+            } else if (c == Float.class) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+            } else if (c == Byte.class) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+            } else if (c == Short.class) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) value);
+            } else if (c == Character.class) {
+                out.writeByte(CHAR);
+                out.writeChar((Character) value);
+            } else if (c == byte[].class) {
+                byte[] array = (byte[]) value;
+                out.writeByte(BYTE_ARRAY);
+                out.writeInt(array.length);
+                out.write(array);
+            } else if (c.isArray() && c.getComponentType().isPrimitive()) {
+                writePrimitiveArray(value);
+            } else if (c == Object[].class && ((Object[]) value).length <= MAX_COMPACT_ARRAY
+                    || c == ArrayList.class || c == HashMap.class || c == HashSet.class) {
+                writeContainer(value);
+            } else {
+                out.writeByte(SERIALIZED);
+                out.writeObject(value);
+            }
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value.length() <= MAX_UTF) {
+                out.writeByte(STRING);
+                out.writeUTF(value);
+            } else {
+                out.writeByte(LONG_STRING);
+                out.writeInt(value.length());
+                out.writeChars(value);
+            }
+        }
+
+        private void writePrimitiveArray(Object value) throws IOException {
+            int length = Array.getLength(value);
+            if (length > MAX_COMPACT_ARRAY) {
+                out.writeByte(SERIALIZED);
+                out.writeObject(value);
+                return;
+            }
+            Class<?> c = value.getClass();
+            if (c == int[].class) {
+                out.writeByte(INT_ARRAY);
+                out.writeInt(length);
+                for (int v : (int[]) value) out.writeInt(v);
+            } else if (c == long[].class) {
+                out.writeByte(LONG_ARRAY);
+                out.writeInt(length);
+                for (long v : (long[]) value) out.writeLong(v);
+            } else if (c == double[].class) {
+                out.writeByte(DOUBLE_ARRAY);
+                out.writeInt(length);
+                for (double v : (double[]) value) out.writeDouble(v);
+            } else if (c == float[].class) {
+                out.writeByte(FLOAT_ARRAY);
+                out.writeInt(length);
+                for (float v : (float[]) value) out.writeFloat(v);
+            } else if (c == char[].class) {
+                out.writeByte(CHAR_ARRAY);
+                out.writeInt(length);
+                for (char v : (char[]) value) out.writeChar(v);
+            } else if (c == short[].class) {
+                out.writeByte(SHORT_ARRAY);
+                out.writeInt(length);
+                for (short v : (short[]) value) out.writeShort(v);
+            } else {
+                out.writeByte(BOOLEAN_ARRAY);
+                out.writeInt(length);
+                for (boolean v : (boolean[]) value) out.writeBoolean(v);
+            }
+        }
+
+        private void writeContainer(Object value) throws IOException {
+            if (written == null) {
+                written = new IdentityHashMap<>();
+            }
+            Integer reference = written.get(value);
+            if (reference != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(reference);
+                return;
+            }
+            written.put(value, written.size());
+            if (value instanceof Object[]) {
+                Object[] array = (Object[]) value;
+                out.writeByte(OBJECT_ARRAY);
+                out.writeInt(array.length);
+                for (Object element : array) write(element);
+            } else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                out.writeByte(HASH_MAP);
+                out.writeInt(map.size());
+                for (Map.Entry<?, ?> e : map.entrySet()) {
+                    write(e.getKey());
+                    write(e.getValue());
+                }
+            } else {
+                Collection<?> collection = (Collection<?>) value;
+                out.writeByte(value instanceof ArrayList ? ARRAY_LIST : HASH_SET);
+                out.writeInt(collection.size());
+                for (Object element : collection) write(element);
+            }
+        }
+    }
+
+    private static class Reader {
+        private final ObjectInput in;
+        //The arrays and collections read so far, in the order they were written.
+        private final List<Object> read = new ArrayList<>();
+
+        Reader(ObjectInput in) {
+            this.in = in;
+        }
+
+        Object read() throws IOException, ClassNotFoundException {
+            byte tag = in.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case SERIALIZED:
+                    return in.readObject();
+                case TRUE:
+                    return true;
+                case FALSE:
+                    return false;
+                case BYTE:
+                    return in.readByte();
+                case SHORT:
+                    return in.readShort();
+                case CHAR:
+                    return in.readChar();
+                case INT:
+                    return in.readInt();
+                case LONG:
+                    return in.readLong();
+                case FLOAT:
+                    return in.readFloat();
+                case DOUBLE:
+                    return in.readDouble();
+                case STRING:
+                    return in.readUTF();
+                case LONG_STRING: {
+                    int length = readLength(Integer.MAX_VALUE);
+                    StringBuilder string = new StringBuilder(Math.min(length, MAX_PREALLOCATED));
+                    for (int i = 0; i < length; i++) string.append(in.readChar());
+                    return string.toString();
+                }
+                case BYTE_ARRAY:
+                    return readBytes(readLength(Integer.MAX_VALUE));
+                case BOOLEAN_ARRAY: {
+                    boolean[] array = new boolean[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readBoolean();
+                    return array;
+                }
+                case SHORT_ARRAY: {
+                    short[] array = new short[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readShort();
+                    return array;
+                }
+                case CHAR_ARRAY: {
+                    char[] array = new char[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readChar();
+                    return array;
+                }
+                case INT_ARRAY: {
+                    int[] array = new int[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+                    return array;
+                }
+                case LONG_ARRAY: {
+                    long[] array = new long[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readLong();
+                    return array;
+                }
+                case FLOAT_ARRAY: {
+                    float[] array = new float[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readFloat();
+                    return array;
+                }
+                case DOUBLE_ARRAY: {
+                    double[] array = new double[readLength(MAX_COMPACT_ARRAY)];
+                    for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+                    return array;
+                }
+                case OBJECT_ARRAY: {
+                    Object[] array = new Object[readLength(MAX_COMPACT_ARRAY)];
+                    //Register containers before reading their contents, so that contents may refer back to them.
+                    read.add(array);
+                    for (int i = 0; i < array.length; i++) array[i] = read();
+                    return array;
+                }
+                case ARRAY_LIST: {
+                    int size = readLength(Integer.MAX_VALUE);
+                    List<Object> list = new ArrayList<>(Math.min(size, MAX_PREALLOCATED));
+                    read.add(list);
+                    for (int i = 0; i < size; i++) list.add(read());
+                    return list;
+                }
+                case HASH_MAP: {
+                    int size = readLength(Integer.MAX_VALUE);
+                    Map<Object, Object> map = new HashMap<>();
+                    read.add(map);
+                    for (int i = 0; i < size; i++) map.put(read(), read());
+                    return map;
+                }
+                case HASH_SET: {
+                    int size = readLength(Integer.MAX_VALUE);
+                    HashSet<Object> set = new HashSet<>();
+                    read.add(set);
+                    for (int i = 0; i < size; i++) set.add(read());
+                    return set;
+                }
+                case REFERENCE:
+                    return read.get(in.readInt());
+                default:
+                    throw new StreamCorruptedException("Unknown value type " + tag);
+            }
+        }
+
+        private int readLength(int max) throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > max) {
+                throw new StreamCorruptedException("Invalid length " + length);
+            }
+            return length;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] array = new byte[Math.min(length, MAX_PREALLOCATED)];
+            in.readFully(array);
+            while (array.length < length) {
+                int filled = array.length;
+                array = Arrays.copyOf(array, (int) Math.min(length, 2L * filled));
+                in.readFully(array, filled, array.length - filled);
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package safeNativeCode.slave.transport;
+
+import safeNativeCode.slave.host.IClassSupplier;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests a slave makes for classes, and the bytes of bytecode sent in response.
+ */
+class CountingSupplier implements IClassSupplier {
+    private final IClassSupplier supplier;
+    private final AtomicLong requests;
+    private final AtomicLong bytes;
+
+    CountingSupplier(IClassSupplier supplier, AtomicLong requests, AtomicLong bytes) {
+        this.supplier = supplier;
+        this.requests = requests;
+        this.bytes = bytes;
+    }
+
+    @Override
+    public byte[] getByteCode(String clazz) throws RemoteException {
+        return count(supplier.getByteCode(clazz));
+    }
+
+    @Override
+    public byte[] getPackageByteCode(String clazz) throws RemoteException {
+        return count(supplier.getPackageByteCode(clazz));
+    }
+
+    @Override
+    public byte[] getByteCodes(String[] classes) throws RemoteException {
+        return count(supplier.getByteCodes(classes));
+    }
+
+    private byte[] count(byte[] response) {
+        requests.incrementAndGet();
+        if (response != null) {
+            bytes.addAndGet(response.length);
+        }
+        return response;
+    }
+}
@@ -0,0 +1,309 @@
+package safeNativeCode.slave.transport;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.rmi.RemoteException;
+import java.rmi.UnmarshalException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * A FrameChannel lets each end of a connection invoke the methods of an object exposed by the other end.
+ * Every message is sent as a frame of {@code [int length][long id][byte kind][payload]}, where the payload holds a
+ * request or response written by a {@link Codec}. Requests are tagged with an id, so that several calls may be in flight at once.
+ * Lambdas in requests are interned by a {@link LambdaInterner}, so a call site is only described once per connection.
+ */
+class FrameChannel implements Closeable {
+    private static final byte REQUEST = 0;
+    private static final byte RESPONSE = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + 1;
+    //Lengths come from the other end, so anything longer than this is taken to mean the stream is corrupt.
+    private static final int MAX_FRAME = 1 << 28;
+    private static final ExecutorService HANDLERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "FrameChannel-handler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Closeable connection;
+    private final Object exposed;
+    private final Method[] exposedMethods;
+    private final UnaryOperator<Object> replace;
+    private final UnaryOperator<Object> resolve;
+    private final Codec codec;
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    private final LambdaInterner lambdas = new LambdaInterner(FrameChannel::resolveClass);
+    private volatile IOException closed;
+    private Runnable onClose = () -> {
+    };
+    private AtomicLong bytesWritten = new AtomicLong();
+    private AtomicLong bytesRead = new AtomicLong();
+
+    /**
+     * Create a channel over a connection
+     *
+     * @param connection the connection, closed along with the channel
+     * @param in         the stream to read frames from
+     * @param out        the stream to write frames to
+     * @param iface      the interface of the object exposed to the other end
+     * @param exposed    the object that requests from the other end are invoked on
+     * @param replace    applied to every object written, used to swap local objects for references the other end understands
+     * @param resolve    applied to every object read, used to swap references back into local objects
+     * @param codec      writes and reads the requests and responses
+     */
+    <T> FrameChannel(Closeable connection, InputStream in, OutputStream out, Class<T> iface, T exposed, UnaryOperator<Object> replace, UnaryOperator<Object> resolve, Codec codec) {
+        this.connection = connection;
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.exposed = exposed;
+        this.exposedMethods = methods(iface);
+        this.replace = replace;
+        this.resolve = resolve;
+        this.codec = codec;
+    }
+
+    /**
+     * Set an action that is run once the connection has been lost
+     */
+    void onClose(Runnable onClose) {
+        this.onClose = onClose;
+    }
+
+    /**
+     * Count the bytes sent and received by this channel, including the frame headers, into counters that may be shared
+     * with other channels
+     */
+    void countBytes(AtomicLong written, AtomicLong read) {
+        this.bytesWritten = written;
+        this.bytesRead = read;
+    }
+
+    /**
+     * Start reading frames from the other end
+     */
+    void start() {
+        Thread reader = new Thread(this::read, "FrameChannel-reader");
+        reader.start();
+    }
+
+    /**
+     * Create an object that forwards calls to the object exposed by the other end
+     *
+     * @param iface the interface exposed by the other end
+     * @return an implementation of iface that sends every call over this channel
+     */
+    @SuppressWarnings("unchecked")
+    <T> T proxy(Class<T> iface) {
+        Map<Method, Integer> indices = new HashMap<>();
+        Method[] methods = methods(iface);
+        for (int i = 0; i < methods.length; i++) {
+            indices.put(methods[i], i);
+        }
+        return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[]{iface}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return iface.getSimpleName() + "@" + connection;
+                }
+            }
+            return invoke(indices.get(method), args == null ? new Object[0] : args);
+        });
+    }
+
+    private Object invoke(int method, Object[] args) throws Throwable {
+        long id = ids.incrementAndGet();
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        List<Integer> defined = new ArrayList<>();
+        pending.put(id, response);
+        try {
+            write(id, REQUEST, serialize(new Object[]{method, args}, defined));
+        } catch (IOException e) {
+            pending.remove(id);
+            throw new RemoteException("Unable to send request", e);
+        }
+        Object[] result;
+        try {
+            result = (Object[]) deserialize(response.get());
+        } catch (ExecutionException e) {
+            throw new RemoteException("Connection to the other end was lost", e.getCause());
+        } catch (InterruptedException e) {
+            pending.remove(id);
+            throw new RemoteException("Interrupted while waiting for a response", e);
+        } catch (ClassNotFoundException | IOException e) {
+            throw new UnmarshalException("Error unmarshalling return", e instanceof IOException ? (IOException) e : new InvalidClassException(e.getMessage()));
+        }
+        if ((Boolean) result[0]) {
+            lambdas.confirm(defined);
+            return result[1];
+        }
+        throw (Throwable) result[1];
+    }
+
+    private void read() {
+        try {
+            while (true) {
+                int length = in.readInt();
+                long id = in.readLong();
+                byte kind = in.readByte();
+                if (length < 0 || length > MAX_FRAME) {
+                    throw new StreamCorruptedException("Invalid frame length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                bytesRead.addAndGet(HEADER_SIZE + length);
+                if (kind == REQUEST) {
+                    HANDLERS.execute(() -> handle(id, payload));
+                } else {
+                    CompletableFuture<byte[]> response = pending.remove(id);
+                    if (response != null) response.complete(payload);
+                }
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            //Whatever stopped the reader, calls waiting for a response must not wait forever.
+            closed = e instanceof EOFException ? (IOException) e : (IOException) new EOFException(e.getMessage()).initCause(e);
+            pending.values().forEach(response -> response.completeExceptionally(closed));
+            pending.clear();
+            close();
+            onClose.run();
+            if (e instanceof Error) throw (Error) e;
+        }
+    }
+
+    private void handle(long id, byte[] payload) {
+        Object[] result;
+        try {
+            Object[] request = (Object[]) deserialize(payload);
+            result = new Object[]{true, exposedMethods[(Integer) request[0]].invoke(exposed, (Object[]) request[1])};
+        } catch (InvocationTargetException e) {
+            result = new Object[]{false, e.getCause()};
+        } catch (Throwable e) {
+            result = new Object[]{false, e};
+        }
+        try {
+            byte[] response;
+            try {
+                response = serialize(result, null);
+            } catch (IOException e) {
+                response = serialize(new Object[]{false, e}, null);
+            }
+            write(id, RESPONSE, response);
+        } catch (IOException e) {
+            //The connection has been lost, so there is nobody to reply to.
+        }
+    }
+
+    private void write(long id, byte kind, byte[] payload) throws IOException {
+        if (closed != null) throw closed;
+        synchronized (out) {
+            out.writeInt(payload.length);
+            out.writeLong(id);
+            out.writeByte(kind);
+            out.write(payload);
+            out.flush();
+        }
+        bytesWritten.addAndGet(HEADER_SIZE + payload.length);
+    }
+
+    /**
+     * Serialize a message
+     *
+     * @param value   the message
+     * @param defined collects the lambda call sites described by the message, or null to send lambdas in full
+     */
+    private byte[] serialize(Object value, List<Integer> defined) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes) {
+            {
+                enableReplaceObject(true);
+            }
+
+            @Override
+            protected Object replaceObject(Object obj) {
+                return replace.apply(defined == null ? obj : lambdas.replace(obj, defined));
+            }
+        }) {
+            codec.write(oos, value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object deserialize(byte[] payload) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(payload)) {
+            {
+                enableResolveObject(true);
+            }
+
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                Class<?> c = classes.get(desc.getName());
+                if (c == null) {
+                    c = FrameChannel.resolveClass(desc.getName());
+                    classes.put(desc.getName(), c == null ? super.resolveClass(desc) : c);
+                }
+                return classes.get(desc.getName());
+            }
+
+            @Override
+            protected Object resolveObject(Object obj) throws IOException {
+                return resolve.apply(lambdas.resolve(obj));
+            }
+        }) {
+            return codec.read(ois);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            //Already closed.
+        }
+    }
+
+    /**
+     * Resolve a class for a message. Core classes are looked up without involving the system classloader, since inside a
+     * slave process it may need to ask the host for the class over this channel, which would itself need to resolve them.
+     */
+    private static Class<?> resolveClass(String name) {
+        try {
+            return Class.forName(name, false, null);
+        } catch (ClassNotFoundException e) {
+            try {
+                return Class.forName(name, false, ClassLoader.getSystemClassLoader());
+            } catch (ClassNotFoundException ex) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Both ends need to agree on a numbering for the methods of an interface, so sort them by signature.
+     */
+    private static Method[] methods(Class<?> iface) {
+        return Arrays.stream(iface.getMethods())
+                .sorted(Comparator.comparing(m -> m.getName() + Arrays.toString(m.getParameterTypes())))
+                .toArray(Method[]::new);
+    }
+}
@@ -0,0 +1,20 @@
+package safeNativeCode.slave.transport;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * A codec that uses Java serialization for every value, in the same way RMI does.
+ */
+public class JavaCodec implements Codec {
+    @Override
+    public void write(ObjectOutput out, Object value) throws IOException {
+        out.writeObject(value);
+    }
+
+    @Override
+    public Object read(ObjectInput in) throws IOException, ClassNotFoundException {
+        return in.readObject();
+    }
+}
@@ -0,0 +1,187 @@
+package safeNativeCode.slave.transport;
+
+import java.io.InvalidObjectException;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A LambdaInterner shortens the lambdas sent in requests over a FrameChannel. The first time a lambda from a call site is
+ * sent, the call site is described along with an id for it. Once the other end has answered a request holding that
+ * description, later lambdas from the same call site are sent as the id and their captured arguments alone.
+ * <p>
+ * The receiving end keeps the method that creates the lambdas of each call site, rather than finding the capturing class and
+ * its $deserializeLambda$ method for every lambda. Lambdas that capture nothing are only created once.
+ */
+class LambdaInterner {
+    private final Map<Site, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    //The ids the other end is known to have, descriptions are sent until a request holding one has been answered.
+    private final Set<Integer> known = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Factory> factories = new ConcurrentHashMap<>();
+    private final Function<String, Class<?>> classes;
+
+    /**
+     * @param classes finds the classes that lambdas received by this end were created in, returning null if there is none
+     */
+    LambdaInterner(Function<String, Class<?>> classes) {
+        this.classes = classes;
+    }
+
+    /**
+     * Swap a lambda that is about to be written for its interned form
+     *
+     * @param obj     an object that is about to be written
+     * @param defined the ids of the call sites described by the message, which are added to if this lambda's is described
+     * @return the interned lambda, or obj if it is not a lambda
+     */
+    Object replace(Object obj, List<Integer> defined) {
+        if (!(obj instanceof SerializedLambda)) return obj;
+        SerializedLambda lambda = (SerializedLambda) obj;
+        Site site = new Site(lambda);
+        int id = ids.computeIfAbsent(site, s -> nextId.incrementAndGet());
+        Object[] captured = new Object[lambda.getCapturedArgCount()];
+        for (int i = 0; i < captured.length; i++) {
+            captured[i] = lambda.getCapturedArg(i);
+        }
+        if (known.contains(id)) {
+            return new Interned(id, null, captured);
+        }
+        defined.add(id);
+        return new Interned(id, site, captured);
+    }
+
+    /**
+     * Record that the other end has read the descriptions in a message
+     *
+     * @param defined the ids of the call sites described by the message
+     */
+    void confirm(List<Integer> defined) {
+        known.addAll(defined);
+    }
+
+    /**
+     * Create the lambda an interned lambda stands for
+     *
+     * @param obj an object that has been read
+     * @return the lambda, or obj if it is not an interned lambda
+     */
+    Object resolve(Object obj) throws ObjectStreamException {
+        if (!(obj instanceof Interned)) return obj;
+        Interned interned = (Interned) obj;
+        Factory factory = interned.site == null ? factories.get(interned.id) : factories.computeIfAbsent(interned.id, id -> new Factory(interned.site));
+        if (factory == null) {
+            throw new InvalidObjectException("Unknown lambda call site " + interned.id);
+        }
+        return factory.create(interned.captured);
+    }
+
+    /**
+     * Creates the lambdas of a call site
+     */
+    private class Factory {
+        private final Site site;
+        private Class<?> capturingClass;
+        private Method deserialize;
+        private Object stateless;
+
+        Factory(Site site) {
+            this.site = site;
+        }
+
+        synchronized Object create(Object[] captured) throws ObjectStreamException {
+            if (stateless != null) return stateless;
+            try {
+                if (deserialize == null) {
+                    capturingClass = classes.apply(site.capturingClass.replace('/', '.'));
+                    if (capturingClass == null) {
+                        throw new InvalidObjectException("Unable to find " + site.capturingClass);
+                    }
+                    deserialize = capturingClass.getDeclaredMethod("$deserializeLambda$", SerializedLambda.class);
+                    deserialize.setAccessible(true);
+                }
+                Object lambda = deserialize.invoke(null, site.toLambda(capturingClass, captured));
+                //A lambda without state can be shared, in the same way the JVM shares non capturing lambdas.
+                if (captured.length == 0) stateless = lambda;
+                return lambda;
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                InvalidObjectException ex = new InvalidObjectException("Unable to create lambda " + site.implMethodName);
+                ex.initCause(e instanceof InvocationTargetException ? e.getCause() : e);
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * A lambda as it is sent, with the description of its call site when the other end may not have it yet
+     */
+    private static class Interned implements Serializable {
+        private final int id;
+        private final Site site;
+        private final Object[] captured;
+
+        Interned(int id, Site site, Object[] captured) {
+            this.id = id;
+            this.site = site;
+            this.captured = captured;
+        }
+    }
+
+    /**
+     * Everything about a lambda besides its captured arguments
+     */
+    private static class Site implements Serializable {
+        private final String capturingClass;
+        private final String functionalInterfaceClass;
+        private final String functionalInterfaceMethodName;
+        private final String functionalInterfaceMethodSignature;
+        private final int implMethodKind;
+        private final String implClass;
+        private final String implMethodName;
+        private final String implMethodSignature;
+        private final String instantiatedMethodType;
+
+        Site(SerializedLambda lambda) {
+            capturingClass = lambda.getCapturingClass();
+            functionalInterfaceClass = lambda.getFunctionalInterfaceClass();
+            functionalInterfaceMethodName = lambda.getFunctionalInterfaceMethodName();
+            functionalInterfaceMethodSignature = lambda.getFunctionalInterfaceMethodSignature();
+            implMethodKind = lambda.getImplMethodKind();
+            implClass = lambda.getImplClass();
+            implMethodName = lambda.getImplMethodName();
+            implMethodSignature = lambda.getImplMethodSignature();
+            instantiatedMethodType = lambda.getInstantiatedMethodType();
+        }
+
+        SerializedLambda toLambda(Class<?> capturingClass, Object[] captured) {
+            return new SerializedLambda(capturingClass, functionalInterfaceClass, functionalInterfaceMethodName,
+                    functionalInterfaceMethodSignature, implMethodKind, implClass, implMethodName, implMethodSignature,
+                    instantiatedMethodType, captured);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Site)) return false;
+            Site s = (Site) o;
+            return implMethodKind == s.implMethodKind && implMethodName.equals(s.implMethodName) && implClass.equals(s.implClass)
+                    && capturingClass.equals(s.capturingClass) && implMethodSignature.equals(s.implMethodSignature)
+                    && instantiatedMethodType.equals(s.instantiatedMethodType) && functionalInterfaceClass.equals(s.functionalInterfaceClass)
+                    && functionalInterfaceMethodName.equals(s.functionalInterfaceMethodName)
+                    && functionalInterfaceMethodSignature.equals(s.functionalInterfaceMethodSignature);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(capturingClass, implClass, implMethodName, implMethodSignature, instantiatedMethodType);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package safeNativeCode.slave.transport;
+
+import safeNativeCode.slave.ProcessControl;
+import safeNativeCode.slave.Slave;
+import safeNativeCode.slave.host.IClassSupplier;
+import safeNativeCode.slave.process.ProcessClassloader;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.rmi.NoSuchObjectException;
+import java.rmi.Remote;
+import java.rmi.server.RMIClientSocketFactory;
+import java.rmi.server.RMIServerSocketFactory;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default transport, which uses RMI. Slave processes connect to a handshake socket shared by every slave of the host,
+ * where the host sends the stub of the slave's class supplier and the slave answers with its own stub once it has been
+ * exported. Neither side has to poll for the other to become ready.
+ * The class suppliers of every slave are exported on a single port as well, so the host only listens on two ports however
+ * many slaves it has.
+ */
+public class RmiTransport implements SlaveTransport {
+    private static Broker broker;
+    private static int brokerPort;
+    //RMI exports objects on the same port when they share a socket factory.
+    private static final RMIServerSocketFactory SUPPLIER_SOCKETS = port -> {
+        ServerSocket ss = new ServerSocket();
+        ss.setReuseAddress(true);
+        ss.bind(new InetSocketAddress(port));
+        return ss;
+    };
+
+    //The transports of the slaves of this host by the account each process was given, so that the connections RMI makes to a
+    //slave are counted against it.
+    private static final Map<String, RmiTransport> TRANSPORTS = new ConcurrentHashMap<>();
+
+    private final String token = Broker.newToken();
+    private final AtomicLong classRequests = new AtomicLong();
+    private final AtomicLong classBytes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private static synchronized Broker getBroker() {
+        if (broker == null) {
+            try {
+                ServerSocket handshake = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+                brokerPort = handshake.getLocalPort();
+                broker = new Broker("RmiTransport", new Broker.Listener() {
+                    @Override
+                    public Broker.Connection accept() throws IOException {
+                        Socket socket = handshake.accept();
+                        return new Broker.Connection(socket, socket.getInputStream(), socket.getOutputStream());
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        handshake.close();
+                    }
+                });
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return broker;
+    }
+
+    @Override
+    public String getEndpoint() {
+        getBroker();
+        return brokerPort + ":" + token;
+    }
+
+    @Override
+    public ProcessControl connect(Slave owner, IClassSupplier supplier) throws IOException, InterruptedException {
+        IClassSupplier counted = new CountingSupplier(supplier, classRequests, classBytes);
+        Remote retriever = UnicastRemoteObject.exportObject(counted, 0, null, SUPPLIER_SOCKETS);
+        //The token is on the command line of the process, where any other process can read it, so the account its traffic is
+        //counted against is only sent over the handshake.
+        String account = Broker.newToken();
+        //The broker frees up the supplier once the process has exited, rather than a thread waiting for every process.
+        Runnable release = () -> {
+            TRANSPORTS.remove(account, this);
+            try {
+                UnicastRemoteObject.unexportObject(counted, true);
+            } catch (NoSuchObjectException e) {
+                //Already unexported.
+            }
+        };
+        try (Broker.Connection connection = getBroker().await(token, owner, release)) {
+            //Registered once the previous process of the slave has been released, which unregisters it.
+            TRANSPORTS.put(account, this);
+            ObjectOutputStream out = new ObjectOutputStream(connection.out);
+            out.writeObject(retriever);
+            out.writeUTF(account);
+            out.flush();
+            return (ProcessControl) new ObjectInputStream(connection.in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return the amount of requests for classes made by the processes of the slave using this transport
+     */
+    public long getClassRequests() {
+        return classRequests.get();
+    }
+
+    /**
+     * @return the amount of bytes of bytecode sent to the processes of the slave using this transport
+     */
+    public long getClassBytes() {
+        return classBytes.get();
+    }
+
+    /**
+     * @return the amount of bytes sent to the processes of the slave using this transport, not counting bytecode
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the amount of bytes received from the processes of the slave using this transport, not counting requests for classes
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public void serve(String endpoint, ProcessControl slave) throws IOException {
+        int split = endpoint.indexOf(':');
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(endpoint.substring(0, split)))) {
+            Broker.sendToken(socket.getOutputStream(), endpoint.substring(split + 1));
+            ObjectInputStream in = new ObjectInputStream(socket.getInputStream());
+            ProcessClassloader.setByteCodeSupplier((IClassSupplier) in.readObject());
+            String account = in.readUTF();
+            ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream());
+            //The host connects to the slave through the given socket factory, which counts the bytes sent on the host's side.
+            out.writeObject(UnicastRemoteObject.exportObject(slave, 0, new CountingSockets(account), null));
+            out.flush();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Creates the sockets the host calls a slave through, counting the bytes sent and received against the slave's transport
+     */
+    private static class CountingSockets implements RMIClientSocketFactory, Serializable {
+        private final String account;
+
+        CountingSockets(String account) {
+            this.account = account;
+        }
+
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            RmiTransport transport = TRANSPORTS.get(account);
+            if (transport == null) {
+                return new Socket(host, port);
+            }
+            return new CountingSocket(host, port, transport.bytesWritten, transport.bytesRead);
+        }
+
+        //RMI only reuses connections made by factories that are equal.
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CountingSockets && ((CountingSockets) o).account.equals(account);
+        }
+
+        @Override
+        public int hashCode() {
+            return account.hashCode();
+        }
+    }
+
+    private static class CountingSocket extends Socket {
+        private final AtomicLong sent;
+        private final AtomicLong received;
+        private InputStream in;
+        private OutputStream out;
+
+        CountingSocket(String host, int port, AtomicLong sent, AtomicLong received) throws IOException {
+            super(host, port);
+            this.sent = sent;
+            this.received = received;
+        }
+
+        @Override
+        public synchronized InputStream getInputStream() throws IOException {
+            if (in == null) {
+                in = new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b >= 0) received.incrementAndGet();
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n > 0) received.addAndGet(n);
+                        return n;
+                    }
+                };
+            }
+            return in;
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new FilterOutputStream(super.getOutputStream()) {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        sent.incrementAndGet();
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        sent.addAndGet(len);
+                    }
+                };
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package safeNativeCode.slave.transport;
+
+import safeNativeCode.slave.ProcessControl;
+import safeNativeCode.slave.Slave;
+import safeNativeCode.slave.host.IClassSupplier;
+
+import java.io.IOException;
+
+/**
+ * A SlaveTransport carries calls from the host to a slave process, and requests for classes from the slave back to the host.
+ * The host side methods are used by an AbstractSlave, while the slave side is created by ProcessMain using the transport's
+ * no argument constructor, so implementations must provide one.
+ */
+public interface SlaveTransport {
+    /**
+     * Get the endpoint a slave process should connect to. This is passed to the slave process as an argument.
+     *
+     * @return a string describing how to reach the host
+     */
+    String getEndpoint();
+
+    /**
+     * Wait for a newly started slave process to connect, and serve classes to it.
+     *
+     * @param owner    the slave that started the process
+     * @param supplier the supplier that class requests from the slave process should be sent to
+     * @return the remote api of the slave process
+     */
+    ProcessControl connect(Slave owner, IClassSupplier supplier) throws IOException, InterruptedException;
+
+    /**
+     * Called inside the slave process to make the slave reachable from the host.
+     * The host's class supplier must be given to ProcessClassloader before the slave becomes reachable.
+     *
+     * @param endpoint the endpoint returned by {@link #getEndpoint()} on the host
+     * @param slave    the slave to serve calls with
+     */
+    void serve(String endpoint, ProcessControl slave) throws IOException, InterruptedException;
+
+    /**
+     * @return the amount of bytes the host has sent to slave processes over this transport, or -1 if they are not counted
+     */
+    default long getBytesWritten() {
+        return -1;
+    }
+
+    /**
+     * @return the amount of bytes the host has received from slave processes over this transport, or -1 if they are not counted
+     */
+    default long getBytesRead() {
+        return -1;
+    }
+}
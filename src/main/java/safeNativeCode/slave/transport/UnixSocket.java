@@ -0,0 +1,279 @@
+package safeNativeCode.slave.transport;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import safeNativeCode.utils.Utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A stream oriented unix domain socket. Java 8 has no support for unix domain sockets, so they are accessed through libc.
+ * Calls interrupted by a signal are retried, like the JDK does for its own sockets.
+ */
+class UnixSocket implements Closeable {
+    private final int fd;
+    private volatile boolean closed = false;
+
+    private UnixSocket(int fd) {
+        this.fd = fd;
+    }
+
+    /**
+     * Connect to a socket that is listening at a path
+     *
+     * @param path the path of the socket
+     * @return the connected socket
+     * @throws IOException the socket could not be connected to
+     */
+    static UnixSocket connect(String path) throws IOException {
+        byte[] address = CLibrary.address(path);
+        int fd = CLibrary.open();
+        try {
+            CLibrary.connect(fd, address, address.length);
+        } catch (LastErrorException e) {
+            if (e.getErrorCode() != CLibrary.EINTR) {
+                CLibrary.close(fd);
+                throw new IOException("Unable to connect to " + path, e);
+            }
+            //An interrupted connect carries on by itself, so wait for it to finish rather than connecting again.
+            if (!CLibrary.await(fd, CLibrary.POLLOUT, -1) || CLibrary.getError(fd) != 0) {
+                CLibrary.close(fd);
+                throw new IOException("Unable to connect to " + path, e);
+            }
+        }
+        return new UnixSocket(fd);
+    }
+
+    InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) return 0;
+                //The buffer points into the array at the offset, so nothing has to be copied.
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (true) {
+                    try {
+                        int read = CLibrary.read(fd, buffer, new NativeLong(len)).intValue();
+                        return read == 0 ? -1 : read;
+                    } catch (LastErrorException e) {
+                        if (e.getErrorCode() != CLibrary.EINTR) throw new IOException("Unable to read from socket", e);
+                    }
+                }
+            }
+        };
+    }
+
+    OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                while (len > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                    int written;
+                    try {
+                        written = CLibrary.write(fd, buffer, new NativeLong(len)).intValue();
+                    } catch (LastErrorException e) {
+                        if (e.getErrorCode() == CLibrary.EINTR) continue;
+                        throw new IOException("Unable to write to socket", e);
+                    }
+                    off += written;
+                    len -= written;
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        //Shut the socket down first, so that threads blocked reading from it are woken up.
+        CLibrary.shutdown(fd, CLibrary.SHUT_RDWR);
+        CLibrary.close(fd);
+    }
+
+    /**
+     * A unix domain socket that accepts connections
+     */
+    static class Server implements Closeable {
+        private final int fd;
+        private final String path;
+        private volatile boolean closed = false;
+
+        private Server(int fd, String path) {
+            this.fd = fd;
+            this.path = path;
+        }
+
+        /**
+         * Create a socket listening at a path
+         *
+         * @param path the path of the socket, which must not exist yet
+         * @return the listening socket
+         * @throws IOException the socket could not be created
+         */
+        static Server bind(String path) throws IOException {
+            byte[] address = CLibrary.address(path);
+            int fd = CLibrary.open();
+            try {
+                CLibrary.bind(fd, address, address.length);
+                CLibrary.listen(fd, 16);
+            } catch (LastErrorException e) {
+                CLibrary.close(fd);
+                throw new IOException("Unable to listen on " + path, e);
+            }
+            return new Server(fd, path);
+        }
+
+        /**
+         * Wait for a connection
+         *
+         * @param timeout how long to wait, in milliseconds
+         * @return the accepted connection
+         * @throws SocketTimeoutException nothing connected in time
+         * @throws IOException            the socket has been closed
+         */
+        UnixSocket accept(int timeout) throws IOException {
+            while (true) {
+                if (closed) throw new IOException("The socket at " + path + " has been closed");
+                try {
+                    if (!CLibrary.await(fd, CLibrary.POLLIN, timeout)) {
+                        throw new SocketTimeoutException("Nothing connected to " + path + " in time");
+                    }
+                    return new UnixSocket(CLibrary.accept(fd, null, null));
+                } catch (LastErrorException e) {
+                    if (e.getErrorCode() != CLibrary.EINTR) {
+                        throw new IOException("Unable to accept a connection on " + path, e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            CLibrary.shutdown(fd, CLibrary.SHUT_RDWR);
+            CLibrary.close(fd);
+            new File(path).delete();
+        }
+    }
+
+    private static class CLibrary {
+        static final int AF_UNIX = 1;
+        static final int SOCK_STREAM = 1;
+        static final int SHUT_RDWR = 2;
+        static final int EINTR = 4;
+        static final short POLLIN = 1;
+        static final short POLLOUT = 4;
+        static final int SOL_SOCKET = Utils.isMac() ? 0xffff : 1;
+        static final int SO_ERROR = Utils.isMac() ? 0x1007 : 4;
+        //The size of sun_path, which holds the path and its terminating null.
+        static final int MAX_PATH = Utils.isMac() ? 104 : 108;
+
+        static {
+            Native.register("c");
+        }
+
+        static int open() throws IOException {
+            try {
+                return socket(AF_UNIX, SOCK_STREAM, 0);
+            } catch (LastErrorException e) {
+                throw new IOException("Unable to create a unix domain socket", e);
+            }
+        }
+
+        /**
+         * Build a sockaddr_un for a path. BSD derived systems store the length of the address in the first byte.
+         */
+        static byte[] address(String path) throws IOException {
+            byte[] name = path.getBytes(StandardCharsets.UTF_8);
+            if (name.length >= MAX_PATH) {
+                throw new IOException("The path of a unix domain socket must be shorter than " + MAX_PATH + " bytes: " + path);
+            }
+            byte[] address = new byte[2 + name.length + 1];
+            if (Utils.isMac()) {
+                address[0] = (byte) address.length;
+                address[1] = AF_UNIX;
+            } else if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+                address[0] = AF_UNIX;
+            } else {
+                address[1] = AF_UNIX;
+            }
+            System.arraycopy(name, 0, address, 2, name.length);
+            return address;
+        }
+
+        /**
+         * Wait for a socket to become ready, retrying if interrupted by a signal
+         *
+         * @param events  the events to wait for, such as POLLIN
+         * @param timeout how long to wait in milliseconds, or -1 to wait forever
+         * @return false if the timeout passed first
+         */
+        static boolean await(int fd, short events, int timeout) {
+            //struct pollfd holds the descriptor followed by the requested and returned events, which are both shorts.
+            ByteBuffer pollfd = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+            pollfd.putInt(0, fd).putShort(4, events);
+            while (true) {
+                try {
+                    return poll(pollfd.array(), 1, timeout) > 0;
+                } catch (LastErrorException e) {
+                    if (e.getErrorCode() != EINTR) throw e;
+                }
+            }
+        }
+
+        /**
+         * @return the pending error of a socket, such as the result of a connect that was interrupted
+         */
+        static int getError(int fd) {
+            int[] error = new int[1];
+            getsockopt(fd, SOL_SOCKET, SO_ERROR, error, new int[]{Integer.BYTES});
+            return error[0];
+        }
+
+        public static native int socket(int domain, int type, int protocol) throws LastErrorException;
+
+        public static native int bind(int fd, byte[] address, int length) throws LastErrorException;
+
+        public static native int listen(int fd, int backlog) throws LastErrorException;
+
+        public static native int accept(int fd, Pointer address, Pointer length) throws LastErrorException;
+
+        public static native int connect(int fd, byte[] address, int length) throws LastErrorException;
+
+        public static native NativeLong read(int fd, ByteBuffer buffer, NativeLong count) throws LastErrorException;
+
+        public static native NativeLong write(int fd, ByteBuffer buffer, NativeLong count) throws LastErrorException;
+
+        public static native int poll(byte[] fds, int count, int timeout) throws LastErrorException;
+
+        public static native int getsockopt(int fd, int level, int option, int[] value, int[] length) throws LastErrorException;
+
+        public static native int shutdown(int fd, int how);
+
+        public static native int close(int fd);
+    }
+}
@@ -0,0 +1,190 @@
+package safeNativeCode.slave.transport;
+
+import safeNativeCode.slave.Functions;
+import safeNativeCode.slave.ProcessControl;
+import safeNativeCode.slave.RemoteObject;
+import safeNativeCode.slave.Slave;
+import safeNativeCode.slave.host.IClassSupplier;
+import safeNativeCode.slave.process.ProcessClassloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A transport for slaves running on the same machine as the host, which sends framed messages over a unix domain socket
+ * instead of using RMI over the loopback network.
+ * The socket is created in the temporary directory, so this transport can't be used with slaves running inside a container.
+ * Messages are written by a {@link Codec}, which is a {@link CompactCodec} unless another one is given.
+ */
+public class UnixSocketTransport implements SlaveTransport {
+    //Every slave connected to this host, so that references to them can be resolved when they are read.
+    private static final Map<String, ProcessControl> SLAVES = new ConcurrentHashMap<>();
+    private static final Map<ProcessControl, String> ENDPOINTS = new ConcurrentHashMap<>();
+    //How long to wait for a connection before checking that the socket is still open.
+    private static final int ACCEPT_TIMEOUT = 1000;
+    private static Broker broker;
+    private static String path;
+    private final Codec codec;
+    private final String token = Broker.newToken();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    public UnixSocketTransport() {
+        this(new CompactCodec());
+    }
+
+    /**
+     * Create a transport that writes messages with a specific codec
+     *
+     * @param codec the codec, which the slave process creates its own instance of
+     */
+    public UnixSocketTransport(Codec codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Every slave process of the host connects to the same socket.
+     */
+    private static synchronized Broker getBroker() {
+        if (broker == null) {
+            String name = "safeNativeCode-" + Long.toHexString(new Random().nextLong()) + ".sock";
+            path = new File(System.getProperty("java.io.tmpdir"), name).getAbsolutePath();
+            UnixSocket.Server server;
+            try {
+                server = UnixSocket.Server.bind(path);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            broker = new Broker("UnixSocketTransport", new Broker.Listener() {
+                @Override
+                public Broker.Connection accept() throws IOException {
+                    UnixSocket socket;
+                    while (true) {
+                        try {
+                            //Wake up now and then, since closing the socket does not interrupt accept on every system.
+                            socket = server.accept(ACCEPT_TIMEOUT);
+                            break;
+                        } catch (SocketTimeoutException e) {
+                            //Nothing has connected yet, accept fails once the socket is closed.
+                        }
+                    }
+                    return new Broker.Connection(socket, socket.getInputStream(), socket.getOutputStream());
+                }
+
+                @Override
+                public void close() {
+                    server.close();
+                }
+            });
+            Runtime.getRuntime().addShutdownHook(new Thread(broker::close));
+        }
+        return broker;
+    }
+
+    @Override
+    public String getEndpoint() {
+        getBroker();
+        //The slave process needs to know which codec to use as well.
+        return codec.getClass().getName() + ":" + token + ":" + path;
+    }
+
+    /**
+     * @return the amount of bytes sent to slave processes through this transport
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return the amount of bytes received from slave processes through this transport
+     */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    @Override
+    public ProcessControl connect(Slave owner, IClassSupplier supplier) throws IOException, InterruptedException {
+        String endpoint = getEndpoint();
+        //Forget the slave once its process has exited, its connection closes by itself.
+        Broker.Connection connection = getBroker().await(token, owner, () -> {
+            ProcessControl exited = SLAVES.remove(endpoint);
+            if (exited != null) {
+                ENDPOINTS.remove(exited);
+            }
+        });
+        FrameChannel channel = new FrameChannel(connection, connection.in, connection.out, IClassSupplier.class, supplier,
+                obj -> obj instanceof ProcessControl && ENDPOINTS.containsKey(obj) ? new SlaveReference(ENDPOINTS.get(obj)) : obj,
+                obj -> obj instanceof SlaveReference ? SLAVES.get(((SlaveReference) obj).endpoint) : obj, codec);
+        channel.countBytes(bytesWritten, bytesRead);
+        ProcessControl remote = channel.proxy(ProcessControl.class);
+        //Objects belonging to other slaves can't be reached from the slave process, so copies are made through the host.
+        ProcessControl slave = (ProcessControl) Proxy.newProxyInstance(ProcessControl.class.getClassLoader(), new Class<?>[]{ProcessControl.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "copy":
+                    Object value = ((RemoteObject<?>) args[0]).get();
+                    return remote.call((Functions.Supplier<Object>) () -> value);
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "UnixSocketSlave@" + endpoint;
+                default:
+                    try {
+                        return method.invoke(remote, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        });
+        ProcessControl previous = SLAVES.put(endpoint, slave);
+        if (previous != null) {
+            ENDPOINTS.remove(previous);
+        }
+        ENDPOINTS.put(slave, endpoint);
+        channel.start();
+        return slave;
+    }
+
+    @Override
+    public void serve(String endpoint, ProcessControl slave) throws IOException {
+        //The endpoint holds the codec, the token of the slave and the path of the socket.
+        String[] parts = endpoint.split(":", 3);
+        Codec codec;
+        try {
+            codec = (Codec) Class.forName(parts[0]).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("Unable to create the codec", e);
+        }
+        UnixSocket socket = UnixSocket.connect(parts[2]);
+        Broker.sendToken(socket.getOutputStream(), parts[1]);
+        FrameChannel channel = new FrameChannel(socket, socket.getInputStream(), socket.getOutputStream(), ProcessControl.class, slave,
+                obj -> obj == slave ? new SlaveReference(endpoint) : obj,
+                obj -> obj instanceof SlaveReference ? (endpoint.equals(((SlaveReference) obj).endpoint) ? slave : null) : obj, codec);
+        //Once the host has gone away there is nothing left to do.
+        channel.onClose(() -> System.exit(0));
+        ProcessClassloader.setByteCodeSupplier(channel.proxy(IClassSupplier.class));
+        channel.start();
+    }
+
+    /**
+     * Stands in for a slave inside messages, since the slave itself can't be sent to the other end.
+     */
+    private static class SlaveReference implements Serializable {
+        private final String endpoint;
+
+        SlaveReference(String endpoint) {
+            this.endpoint = endpoint;
+        }
+    }
+}
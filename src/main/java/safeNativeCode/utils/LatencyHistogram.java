@@ -0,0 +1,110 @@
+package safeNativeCode.utils;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A LatencyHistogram counts durations in buckets that double in size, so that recording one only takes an addition, even when
+ * many threads record at once. Percentiles are only accurate to within a factor of two, which is enough to tell where time goes.
+ */
+public class LatencyHistogram {
+    //Bucket i holds durations of less than 2^i nanoseconds that did not fit in bucket i - 1.
+    private static final int BUCKETS = 64;
+    /**
+     * The length of the array returned by {@link #getCounts()}
+     */
+    public static final int COUNTS = BUCKETS + 1;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder total = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        total.add(nanos);
+    }
+
+    /**
+     * @return the amount of durations recorded
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * @return the mean of the durations recorded, in milliseconds
+     */
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : getTotal() / 1000000d / count;
+    }
+
+    /**
+     * Find the duration that a fraction of the recorded durations are shorter than
+     *
+     * @param fraction the fraction of durations, such as 0.99
+     * @return the upper bound of the bucket holding the percentile, in milliseconds, or 0 if nothing has been recorded
+     */
+    public double getPercentile(double fraction) {
+        long[] counts = getCounts();
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += counts[i];
+        long wanted = (long) Math.ceil(count * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen > 0 && seen >= wanted) {
+                return Math.pow(2, i) / 1000000d;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the amount of durations in each bucket, followed by their sum, so that a histogram can be sent between processes
+     */
+    public long[] getCounts() {
+        long[] counts = new long[COUNTS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        counts[BUCKETS] = total.sum();
+        return counts;
+    }
+
+    /**
+     * Recreate a histogram from the counts of another
+     *
+     * @param counts the counts returned by {@link #getCounts()}
+     * @return a histogram with the same counts
+     */
+    public static LatencyHistogram of(long[] counts) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.buckets[i].add(counts[i]);
+        }
+        histogram.total.add(counts[BUCKETS]);
+        return histogram;
+    }
+}
@@ -0,0 +1,89 @@
+package safeNativeCode.utils;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A PackageTrie holds a set of package names, split on each '.', so that the package of a class can be found one part at a
+ * time, stopping as soon as a part is not in any package.
+ */
+class PackageTrie {
+    private final Node root = new Node();
+    private int size = 0;
+
+    /**
+     * Build a trie of the packages in the named modules of the boot layer
+     *
+     * @param modules the names of the modules to include
+     * @return the trie, or null if the JVM does not have modules
+     */
+    static PackageTrie ofModules(Collection<String> modules) {
+        try {
+            //Modules only exist from Java 9, so they can't be used directly when building for Java 8.
+            Class<?> layerClass = Class.forName("java.lang.ModuleLayer");
+            Class<?> moduleClass = Class.forName("java.lang.Module");
+            Method getName = moduleClass.getMethod("getName");
+            Method getPackages = moduleClass.getMethod("getPackages");
+            Object layer = layerClass.getMethod("boot").invoke(null);
+            PackageTrie trie = new PackageTrie();
+            for (Object module : (Collection<?>) layerClass.getMethod("modules").invoke(layer)) {
+                if (modules.contains((String) getName.invoke(module))) {
+                    for (Object pkg : (Collection<?>) getPackages.invoke(module)) {
+                        trie.add((String) pkg);
+                    }
+                }
+            }
+            return trie;
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Add a package to the trie
+     *
+     * @param pkg the name of the package
+     */
+    void add(String pkg) {
+        Node node = root;
+        for (String part : pkg.split("\\.")) {
+            node = node.children.computeIfAbsent(part, p -> new Node());
+        }
+        if (!node.isPackage) {
+            node.isPackage = true;
+            size++;
+        }
+    }
+
+    /**
+     * Check if a class is in one of the packages in the trie. Classes in subpackages of those packages are not included.
+     *
+     * @param className the fully qualified name of the class
+     * @return true if the package of the class is in the trie
+     */
+    boolean containsClass(String className) {
+        Node node = root;
+        int start = 0;
+        int end;
+        while ((end = className.indexOf('.', start)) != -1) {
+            node = node.children.get(className.substring(start, end));
+            if (node == null) return false;
+            start = end + 1;
+        }
+        return node.isPackage;
+    }
+
+    /**
+     * @return the amount of packages in the trie
+     */
+    int size() {
+        return size;
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+        boolean isPackage = false;
+    }
+}
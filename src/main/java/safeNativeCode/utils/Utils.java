@@ -4,7 +4,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiPredicate;
 
 public class Utils {
@@ -32,27 +36,67 @@ public class Utils {
      * @return true if the class is a core java class, false otherwise
      */
     public static boolean isJavaClass(String name) {
-        String className = name.replace(".", File.separator) + ".class";
-        URL classLoc = ClassLoader.getSystemClassLoader().getResource(className);
-        return isJavaClass.test(classLoc,name);
+        return classifier.isJavaClass(name);
     }
     /**
      * Get the current customized check for core java classes
      * @return BiPredicate<URL,String>
      */
-    static public BiPredicate<URL,String> getIsJavaClass(){return isJavaClass;}
+    static public BiPredicate<URL,String> getIsJavaClass(){return classifier.test;}
     
     /**
      * Set the current customized check for core java classes.
      * The corresponding get method can be used to emulate super.
+     * Decisions are cached for each class name, so the check must always give the same answer for the same class.
      * @parameter BiPredicate<URL,String>
      */
-    static public void setIsJavaClass(BiPredicate<URL,String> test){isJavaClass=test;}
-    static private volatile BiPredicate<URL,String> isJavaClass=(classLoc,name)->defaultIsJavaClass(classLoc,name);
+    static public void setIsJavaClass(BiPredicate<URL,String> test){classifier=new JavaClassifier(test);}
+    private static final BiPredicate<URL,String> defaultIsJavaClass=(classLoc,name)->defaultIsJavaClass(classLoc,name);
+    //Null before Java 9, where there are no modules to read the packages from.
+    private static final PackageTrie javaPackages=PackageTrie.ofModules(Arrays.asList("java.base","java.compiler","java.desktop"));
+    static private volatile JavaClassifier classifier=new JavaClassifier(defaultIsJavaClass);
     private static boolean defaultIsJavaClass(URL classLoc,String name){
         //jrt: = java9, java.home = java8
         return classLoc != null && (name.startsWith("java.") || classLoc.toString().startsWith("jar:file:" + System.getProperty("java.home")) || classLoc.toString().startsWith("jrt:/java.compiler") || classLoc.toString().startsWith("jrt:/java.base") || classLoc.toString().startsWith("jrt:/java.desktop"));
     }
+
+    /**
+     * Decides if classes are core java classes with one check, remembering the decision for each class.
+     * Replaced as a whole when the check changes, so that no decision made with an old check is kept.
+     * Slaves can ask for classes with any name, so the decisions are forgotten once there are too many of them.
+     */
+    private static class JavaClassifier {
+        private static final int MAX_DECISIONS = 16384;
+        final BiPredicate<URL,String> test;
+        final Map<String,Boolean> decisions=new ConcurrentHashMap<>();
+
+        JavaClassifier(BiPredicate<URL,String> test) {
+            this.test=test;
+        }
+
+        boolean isJavaClass(String name) {
+            Boolean decision=decisions.get(name);
+            if (decision == null) {
+                decision=classify(name);
+                if (decisions.size() >= MAX_DECISIONS) {
+                    decisions.clear();
+                }
+                decisions.put(name,decision);
+            }
+            return decision;
+        }
+
+        private boolean classify(String name) {
+            String className = name.replace(".", File.separator) + ".class";
+            //The default check only accepts classes from a few JDK modules, whose packages are known, so a class in one of them
+            //only has to exist. Classes in java.* packages from other modules, such as java.sql, still need their location checked.
+            if (test == defaultIsJavaClass && javaPackages != null && !name.startsWith("java.")) {
+                return javaPackages.containsClass(name) && ClassLoader.getSystemClassLoader().getResource(className) != null;
+            }
+            URL classLoc = ClassLoader.getSystemClassLoader().getResource(className);
+            return test.test(classLoc,name);
+        }
+    }
     
     /**
      * Check if a class is a JUnit or Gradle class, only if testing mode is enabled
@@ -65,6 +109,31 @@ public class Utils {
     }
 
 
+    /**
+     * Get the amount of memory used to store class metadata
+     *
+     * @return the amount of metaspace used in bytes, or -1 if the JVM does not report it
+     */
+    public static long getMetaspaceUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans()
+                .stream()
+                .filter(pool -> pool.getName().equals("Metaspace"))
+                .mapToLong(pool -> pool.getUsage().getUsed())
+                .findFirst()
+                .orElse(-1);
+    }
+
+    /**
+     * Describe the metaspace in use, for the messages printed once SafeClassLoader has started. Reading it loads the management
+     * classes, which adds to the startup it is reporting on, so it is only read when the safeNativeCode.profileStartup
+     * property is true.
+     *
+     * @return the metaspace in use, to be appended to a message, or an empty string if startup is not being profiled
+     */
+    public static String describeMetaspaceUsage() {
+        return Boolean.getBoolean("safeNativeCode.profileStartup") ? ", using " + getMetaspaceUsage() / 1024 + "KB of metaspace" : "";
+    }
+
     private static String OS = System.getProperty("os.name").toLowerCase();
 
     public static boolean isWindows() {
@@ -1,28 +1,65 @@
 import compiler.JavaCompiler;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import safeNativeCode.exceptions.ClassLoadingDisabledException;
 import safeNativeCode.exceptions.SlaveException;
 import safeNativeCode.exceptions.UnknownObjectException;
+import safeNativeCode.slave.Functions;
+import safeNativeCode.slave.Pipeline;
+import safeNativeCode.slave.RemoteBuffer;
 import safeNativeCode.slave.RemoteObject;
 import safeNativeCode.slave.Slave;
+import safeNativeCode.slave.host.DockerRuntime;
 import safeNativeCode.slave.host.DockerSlave;
+import safeNativeCode.slave.host.AbstractSlave;
+import safeNativeCode.slave.host.ClassProfile;
 import safeNativeCode.slave.host.ProcessSlave;
+import safeNativeCode.slave.host.SlaveMetrics;
+import safeNativeCode.slave.host.SlavePool;
+import safeNativeCode.slave.host.StartupTimes;
+import safeNativeCode.slave.process.ProcessClassloader;
+import safeNativeCode.slave.process.ProcessObject;
+import safeNativeCode.slave.transport.Codec;
+import safeNativeCode.slave.transport.CompactCodec;
+import safeNativeCode.slave.transport.JavaCodec;
+import safeNativeCode.slave.transport.RmiTransport;
+import safeNativeCode.slave.transport.UnixSocketTransport;
+import safeNativeCode.utils.Utils;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.DoubleBuffer;
+import java.rmi.RemoteException;
 import java.rmi.UnmarshalException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
+import javax.management.ObjectName;
+
 @RunWith(Parameterized.class)
 public class Tests {
+    //Only set inside the slave, by testRelease.
+    private static WeakReference<Object> released;
+    //Only used inside the slave, by timeConcurrentExecution.
+    private static final AtomicInteger executing = new AtomicInteger();
+    private static final AtomicInteger mostExecuting = new AtomicInteger();
     private static String DYNAMIC_CODE = "public class Test implements java.io.Serializable {String getData() {return \"test\";}}";
     private Class<? extends Slave> clazz;
 
@@ -154,6 +191,58 @@ public class Tests {
         System.out.println("Time taken to construct: " + totalTime/1000000f / testCount);
     }
 
+    @Test
+    public void testStartupTimes() throws Exception {
+        AbstractSlave slave = (AbstractSlave) construct();
+        slave.call(() -> 1);
+        StartupTimes times = slave.getStartupBreakdown();
+        System.out.println("Startup times: " + times);
+        Assert.assertTrue(times.getLaunchTime() >= 0 && times.getSupplierLookupTime() >= 0 && times.getBindTime() >= 0);
+        Assert.assertTrue(times.getTotalTime() >= times.getLaunchTime());
+        Assert.assertTrue(times.getFirstCallTime() > 0);
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        AbstractSlave slave = (AbstractSlave) construct();
+        RemoteObject<Integer> a = slave.call(() -> 1);
+        RemoteObject<Integer> b = slave.call(a, x -> {
+            return x + 1;
+        });
+        slave.call(a, b, (x, y) -> x + y);
+        //Calls the host makes to manage the slave are not counted.
+        slave.recordClasses(false);
+        slave.getStartupBreakdown();
+        SlaveMetrics metrics = slave.getMetrics();
+        metrics.refresh();
+        System.out.println("Metrics: " + metrics);
+        long[] byArity = metrics.getCallsByArity();
+        Assert.assertEquals(1, byArity[0]);
+        Assert.assertEquals(3, metrics.getCalls());
+        Assert.assertEquals(1, byArity[1]);
+        Assert.assertEquals(1, byArity[2]);
+        Assert.assertEquals(0, metrics.getFailedCalls());
+        Assert.assertTrue(metrics.getCallTimes().getCount() >= 3);
+        Assert.assertTrue(metrics.getCallTime99() >= metrics.getCallTimes().getPercentile(0.5));
+        Assert.assertTrue(metrics.getExecutionTimes().getCount() >= 3);
+        Assert.assertTrue(metrics.getObjectCount() >= 3);
+        Assert.assertTrue(metrics.getBytesSent() > 0 && metrics.getBytesReceived() > 0);
+        try {
+            slave.call(() -> {
+                throw new IllegalStateException();
+            });
+        } catch (SlaveException e) {
+            //Counted as a failed call.
+        }
+        Assert.assertEquals(1, metrics.getFailedCalls());
+        ObjectName name = metrics.register("testMetrics");
+        try {
+            Assert.assertEquals(metrics.getCalls(), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Calls"));
+        } finally {
+            metrics.unregister();
+        }
+    }
+
     @Test
     public void timeExecution() throws IOException, NoSuchMethodException, IllegalAccessException, InvocationTargetException, InstantiationException {
         int testCount = 10;
@@ -263,4 +352,407 @@ public class Tests {
             throw ex.getChild().get();
         }
     }
+
+    @Test
+    public void testPool() throws Exception {
+        try (SlavePool<AbstractSlave> pool = new SlavePool<>(1, () -> {
+            try {
+                return (AbstractSlave) construct();
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        })) {
+            AbstractSlave slave = pool.acquire();
+            RemoteObject<LocalAdder> la = slave.call(LocalAdder::new);
+            Assert.assertEquals(15, la.call(adder -> adder.addToBase(5)).get(), 0);
+            pool.release(slave);
+            //Objects are either deleted or terminated along with their slave once it is returned to the pool
+            try {
+                la.get();
+                Assert.fail();
+            } catch (UnknownObjectException | RemoteException ignored) {
+            }
+            slave = pool.acquire();
+            Assert.assertEquals(15, slave.call(LocalAdder::new).call(adder -> adder.addToBase(5)).get(), 0);
+            pool.release(slave);
+            Assert.assertEquals(2, pool.getHits() + pool.getMisses());
+            System.out.println("Time taken to acquire: " + pool.getAverageAcquireTime());
+        }
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        Slave slave = construct();
+        RemoteObject<LocalAdder> la = slave.call(LocalAdder::new);
+        List<CompletableFuture<RemoteObject<Integer>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            futures.add(slave.callAsync(la, adder -> adder.addToBase(value)));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(10 + i, futures.get(i).get().get(), 0);
+        }
+        CompletableFuture<RemoteObject<Integer>> failed = slave.callAsync(() -> {
+            throw new TestException();
+        });
+        try {
+            failed.get();
+            Assert.fail();
+        } catch (ExecutionException ex) {
+            Assert.assertTrue(ex.getCause() instanceof SlaveException);
+        }
+    }
+
+    @Test
+    public void testAsyncOrder() throws Exception {
+        AbstractSlave slave = (AbstractSlave) construct();
+        slave.setConcurrency(4);
+        RemoteObject<ArrayList<Integer>> list = slave.call(ArrayList::new);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int value = i;
+            futures.add(slave.runAsync(list, l -> l.add(value)));
+            expected.add(i);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        //Calls on the same object execute in the order they were made, even with several workers.
+        Assert.assertEquals(expected, list.get());
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        Slave slave = construct();
+        RemoteObject<A> aWith3 = slave.call(() -> new A(3));
+        Pipeline pipeline = slave.pipeline();
+        Pipeline.Value<A> a = pipeline.of(aWith3);
+        Pipeline.Value<A> b = pipeline.call(() -> new A(5));
+        Pipeline.Value<A> sum = pipeline.keep(pipeline.call(a, b, A::another));
+        Pipeline.Value<Integer> f = pipeline.fetch(pipeline.call(sum, s -> s.f));
+        pipeline.execute();
+        Assert.assertEquals(8, f.get(), 0);
+        Assert.assertEquals(8, sum.getRemote().call(s -> s.f).get(), 0);
+    }
+
+    @Test(expected = SlaveException.class)
+    public void testPipelineException() throws Exception {
+        Pipeline pipeline = construct().pipeline();
+        pipeline.fetch(pipeline.call(pipeline.call(() -> 1), i -> i / 0));
+        pipeline.execute();
+    }
+
+    @Test
+    public void testClassPrefetch() throws Exception {
+        Slave slave = construct();
+        slave.call(LocalAdder::new);
+        long fetches = slave.call(ProcessClassloader::getRemoteFetches).get();
+        //A is in the same package as LocalAdder, so it should already have been sent to the slave.
+        Assert.assertEquals(3, slave.call(() -> new A(3)).call(a -> a.f).get(), 0);
+        Assert.assertEquals(fetches, slave.call(ProcessClassloader::getRemoteFetches).get(), 0);
+        Assert.assertTrue(slave.call(ProcessClassloader::getLocalHits).get() > 0);
+    }
+
+    @Test
+    public void testRemoteBuffer() throws Exception {
+        //Shared memory can only be seen by slaves on the same machine
+        Assume.assumeTrue(clazz == ProcessSlave.class);
+        Slave slave = construct();
+        try (RemoteBuffer input = RemoteBuffer.copyOf(new double[]{1, 2, 3, 4}); RemoteBuffer output = RemoteBuffer.allocate(Double.BYTES)) {
+            slave.run(() -> {
+                DoubleBuffer values = input.buffer().asDoubleBuffer();
+                double sum = 0;
+                while (values.hasRemaining()) sum += values.get();
+                output.buffer().putDouble(sum);
+            });
+            Assert.assertEquals(10, output.buffer().getDouble(), 0);
+            Assert.assertTrue(output.isOwner());
+            Assert.assertFalse(slave.call(output::isOwner).get());
+        }
+    }
+
+    @Test
+    public void testRemoteIterator() throws Exception {
+        Slave slave = construct();
+        RemoteObject<List<Integer>> list = slave.call(() -> IntStream.range(0, 10000).boxed().collect(Collectors.toList()));
+        try (Stream<Integer> stream = slave.iterate(list, 100).stream()) {
+            Assert.assertEquals(49995000, stream.mapToInt(i -> i).sum());
+        }
+        //A batch that isn't full ends the iteration.
+        RemoteObject<Iterator<Integer>> iterator = slave.call(() -> IntStream.range(0, 150).iterator());
+        List<Integer> read = new ArrayList<>();
+        slave.iterator(iterator, 100).forEachRemaining(read::add);
+        Assert.assertEquals(150, read.size());
+        Assert.assertEquals(149, (int) read.get(149));
+    }
+
+    @Test
+    public void testLambdaInterning() throws Exception {
+        //Lambdas are only interned by the framed transport
+        Assume.assumeTrue(clazz == ProcessSlave.class && !Utils.isWindows());
+        UnixSocketTransport transport = new UnixSocketTransport();
+        Slave slave = new ProcessSlave(0, new String[]{}, transport, JavaCompiler.getClassLoader());
+        RemoteObject<Integer> base = slave.call(() -> 100);
+        long[] sizes = new long[3];
+        for (int i = 0; i < sizes.length; i++) {
+            int offset = i;
+            long before = transport.getBytesWritten();
+            RemoteObject<Integer> sum = slave.call(base, b -> b + offset);
+            sizes[i] = transport.getBytesWritten() - before;
+            Assert.assertEquals(100 + i, (int) sum.get());
+        }
+        //Once the call site is known only the id and the captured offset are sent.
+        Assert.assertTrue(sizes[1] < sizes[0]);
+        Assert.assertEquals(sizes[1], sizes[2]);
+        slave.terminate();
+    }
+
+    @Test
+    public void testStandby() throws Exception {
+        AbstractSlave slave = (AbstractSlave) construct();
+        List<AbstractSlave> standbys = new CopyOnWriteArrayList<>();
+        slave.setStandby(() -> {
+            try {
+                AbstractSlave standby = (AbstractSlave) construct();
+                standbys.add(standby);
+                return standby;
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        int epoch = ((ProcessObject<?>) slave.call(() -> 0)).getEpoch();
+        //Wait for the standby to start, so that the failover below is measured against a ready process.
+        slave.getStandbyStarted().get();
+        try {
+            slave.run(() -> System.exit(1));
+            Assert.fail("The slave should have crashed");
+        } catch (CancellationException e) {
+            //Expected, the process has died.
+        }
+        slave.waitForExit();
+        Assert.assertEquals(1, (int) slave.call(() -> 1).get());
+        Assert.assertNotEquals(epoch, ((ProcessObject<?>) slave.call(() -> 0)).getEpoch());
+        Assert.assertEquals(1, slave.getFailoverCount());
+        Assert.assertTrue(slave.getAverageFailoverTime() > 0);
+        //The standby that took over lets go of its process, which now belongs to the slave.
+        Assert.assertFalse(standbys.get(0).isAlive());
+        Assert.assertTrue(slave.isAlive());
+        //Terminating the slave terminates the standby started after the failover as well.
+        slave.getStandbyStarted().get();
+        slave.terminate();
+        Assert.assertEquals(2, standbys.size());
+        Assert.assertFalse(standbys.get(1).isAlive());
+        Assert.assertFalse(slave.isAlive());
+    }
+
+    @Test
+    public void testBroker() throws Exception {
+        Assume.assumeTrue(clazz == ProcessSlave.class);
+        RmiTransport first = new RmiTransport();
+        RmiTransport second = new RmiTransport();
+        //Every slave connects back to the same port, and is told apart by its token.
+        Assert.assertEquals(first.getEndpoint().split(":")[0], second.getEndpoint().split(":")[0]);
+        Assert.assertNotEquals(first.getEndpoint(), second.getEndpoint());
+        Slave a = new ProcessSlave(0, new String[]{}, first, JavaCompiler.getClassLoader());
+        Slave b = new ProcessSlave(0, new String[]{}, second, JavaCompiler.getClassLoader());
+        Assert.assertEquals(3, (int) a.call(() -> new Adder().calculateNumber(1, 2)).get());
+        Assert.assertEquals(7, (int) b.call(() -> 7).get());
+        //Classes are counted for the slave that asked for them.
+        Assert.assertTrue(first.getClassRequests() > 0 && first.getClassBytes() > 0);
+        a.terminate();
+        b.terminate();
+    }
+
+    @Test
+    public void testPooledContainer() throws Exception {
+        Assume.assumeTrue(clazz == DockerSlave.class);
+        DockerRuntime.setPoolSize(1);
+        try {
+            Slave first = construct();
+            //Starting the first slave leaves a container created for the next one.
+            DockerRuntime.awaitPool();
+            Assert.assertEquals(1, DockerRuntime.getPooledCount());
+            DockerRuntime.setPoolSize(0);
+            Slave second = construct();
+            DockerRuntime.awaitPool();
+            //The pooled container was started, and read how to connect from stdin.
+            Assert.assertEquals(0, DockerRuntime.getPooledCount());
+            Assert.assertEquals(3, (int) second.call(() -> new Adder().calculateNumber(1, 2)).get());
+            first.terminate();
+            second.terminate();
+        } finally {
+            DockerRuntime.setPoolSize(1);
+        }
+    }
+
+    @Test(expected = UnknownObjectException.class)
+    public void testForeignObject() throws Exception {
+        Slave first = construct();
+        Slave second = construct();
+        RemoteObject<Integer> a = first.call(() -> 1);
+        RemoteObject<Integer> b = second.call(() -> 1);
+        //Every process started by the host has its own epoch, so the first objects of two slaves never share an id.
+        Assert.assertNotEquals(((ProcessObject<?>) a).getEpoch(), ((ProcessObject<?>) b).getEpoch());
+        Assert.assertNotEquals(a, b);
+        second.call(a, i -> i + 1);
+    }
+
+    @Test(expected = UnknownObjectException.class)
+    public void testRestartedSlave() throws Exception {
+        Slave slave = construct();
+        RemoteObject<Integer> object = slave.call(() -> 1);
+        slave.terminate();
+        //The slave is restarted for this call, and the new process can't have the object.
+        slave.call(object, i -> i + 1);
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        Slave slave = construct();
+        slave.call(() -> {
+            Object o = new int[1000];
+            released = new WeakReference<>(o);
+            return o;
+        });
+        RemoteObject<String> kept = slave.call(() -> "kept");
+        //The handle above is already unreachable, so collecting it should remove the object from the slave.
+        for (int i = 0; i < 100 && !slave.call(() -> released.get() == null).get(); i++) {
+            System.gc();
+            Thread.sleep(100);
+            slave.run(System::gc);
+        }
+        Assert.assertTrue(slave.call(() -> released.get() == null).get());
+        Assert.assertEquals("kept", kept.get());
+    }
+
+    @Test
+    public void testMissingClasses() throws Exception {
+        Slave slave = construct();
+        Functions.Supplier<Boolean> load = () -> {
+            try {
+                Class.forName("MissingClass");
+                return true;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        };
+        Assert.assertFalse(slave.call(load).get());
+        long fetches = slave.call(ProcessClassloader::getRemoteFetches).get();
+        //The host already said it does not have the class, so it should not be asked again.
+        Assert.assertFalse(slave.call(load).get());
+        Assert.assertEquals(fetches, slave.call(ProcessClassloader::getRemoteFetches).get(), 0);
+        Assert.assertTrue(slave.call(ProcessClassloader::getMissingHits).get() > 0);
+        Assert.assertTrue(slave.call(ProcessClassloader::getLocalResolutions).get() > 0);
+    }
+
+    @Test
+    public void timeClassProfile() throws Exception {
+        Functions.Supplier<Integer> workload = () -> new LocalAdder().addToBase(new A(5).another(new A(6)).f);
+        AbstractSlave recorder = (AbstractSlave) construct();
+        recorder.recordClasses(true);
+        recorder.call(workload).get();
+        ClassProfile profile = recorder.getClassProfile();
+        Assert.assertTrue(profile.getClasses().contains(LocalAdder.class.getName()));
+        recorder.terminate();
+        AbstractSlave plain = (AbstractSlave) construct();
+        AbstractSlave profiled = (AbstractSlave) construct();
+        profiled.setClassProfile(profile);
+        Assert.assertTrue(profiled.awaitClassProfile(10000));
+        Instant start = Instant.now();
+        Assert.assertEquals(21, plain.call(workload).get(), 0);
+        Instant middle = Instant.now();
+        Assert.assertEquals(21, profiled.call(workload).get(), 0);
+        Instant end = Instant.now();
+        System.out.println("Time taken for first call: " + Duration.between(start, middle).toNanos() / 1000000f + ", with profile: " + Duration.between(middle, end).toNanos() / 1000000f);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testAsyncCrashing() throws Exception {
+        construct().runAsync(() -> System.exit(1)).get();
+    }
+
+    @Test
+    public void timeConcurrentExecution() throws Exception {
+        int taskCount = 16;
+        AbstractSlave slave = (AbstractSlave) construct();
+        for (int callers = 1; callers <= Runtime.getRuntime().availableProcessors() && callers <= taskCount; callers *= 2) {
+            slave.setConcurrency(callers);
+            slave.run(() -> mostExecuting.set(0));
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            Instant start = Instant.now();
+            for (int i = 0; i < taskCount; i++) {
+                futures.add(slave.runAsync(slave.call(TimingTest::new), Tests::addAllCounted));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            Instant end = Instant.now();
+            System.out.println("Time taken with " + callers + " concurrent callers: " + Duration.between(start, end).toNanos() / 1000000f);
+            int most = slave.call(() -> mostExecuting.get()).get();
+            Assert.assertTrue("More than " + callers + " calls executed at once", most <= callers);
+            if (callers > 1) {
+                Assert.assertTrue("Calls were not executed concurrently", most > 1);
+            }
+        }
+    }
+
+    private static void addAllCounted(TimingTest test) {
+        mostExecuting.accumulateAndGet(executing.incrementAndGet(), Math::max);
+        try {
+            test.addAll();
+        } finally {
+            executing.decrementAndGet();
+        }
+    }
+
+    @Test
+    public void timeTransports() throws Exception {
+        //Unix domain sockets can only be used by slaves on the same machine
+        Assume.assumeTrue(clazz == ProcessSlave.class && !Utils.isWindows());
+        int testCount = 2000;
+        Slave rmi = construct();
+        Slave unix = new ProcessSlave(0, new String[]{}, new UnixSocketTransport(), JavaCompiler.getClassLoader());
+        for (Slave slave : new Slave[]{rmi, unix}) {
+            long totalTime = 0L;
+            for (int i = 0; i < testCount * 2; i++) {
+                Instant start = Instant.now();
+                slave.call(() -> 1).get();
+                Instant end = Instant.now();
+                //Only measure once the JIT has warmed up both processes
+                if (i >= testCount) {
+                    totalTime += Duration.between(start, end).toNanos();
+                }
+            }
+            System.out.println("Round trip time (" + (slave == rmi ? "RMI" : "Unix socket") + "): " + totalTime / 1000000f / testCount);
+        }
+    }
+
+    @Test
+    public void timeCodecs() throws Exception {
+        Assume.assumeTrue(clazz == ProcessSlave.class && !Utils.isWindows());
+        int testCount = 2000;
+        for (Codec codec : new Codec[]{new JavaCodec(), new CompactCodec()}) {
+            UnixSocketTransport transport = new UnixSocketTransport(codec);
+            Slave slave = new ProcessSlave(0, new String[]{}, transport, JavaCompiler.getClassLoader());
+            RemoteObject<int[]> counter = slave.call(() -> new int[1]);
+            long totalTime = 0L;
+            long bytes = 0L;
+            for (int i = 0; i < testCount * 2; i++) {
+                if (i == testCount) {
+                    bytes = transport.getBytesWritten() + transport.getBytesRead();
+                }
+                Instant start = Instant.now();
+                slave.call(counter, c -> {
+                    return c[0] += 1;
+                }).get();
+                Instant end = Instant.now();
+                //Only measure once the JIT has warmed up both processes
+                if (i >= testCount) {
+                    totalTime += Duration.between(start, end).toNanos();
+                }
+            }
+            bytes = transport.getBytesWritten() + transport.getBytesRead() - bytes;
+            String name = codec.getClass().getSimpleName();
+            System.out.println("Round trip time (" + name + "): " + totalTime / 1000000f / testCount);
+            System.out.println("Bytes per round trip (" + name + "): " + bytes / testCount);
+            slave.terminate();
+        }
+    }
 }
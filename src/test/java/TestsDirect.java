@@ -1,10 +1,266 @@
 import org.junit.Assert;
 import org.junit.Test;
 
+import safeNativeCode.exceptions.UnknownObjectException;
+import safeNativeCode.slave.RemoteBuffer;
+import safeNativeCode.slave.RemoteObject;
+import safeNativeCode.slave.host.ClassArchive;
+import safeNativeCode.slave.host.ClassBundle;
+import safeNativeCode.slave.host.IClassSupplier;
+import safeNativeCode.slave.process.ProcessClassloader;
+import safeNativeCode.slave.process.ProcessMain;
+import safeNativeCode.slave.transport.CompactCodec;
+import safeNativeCode.utils.Utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
 
 public class TestsDirect {
+    @Test
+    public void testClassArchive() throws IOException {
+        //A loader of its own, so that the made up bytecode below is never served to slaves sharing the test's loader.
+        ClassLoader loader = new URLClassLoader(new URL[0], TestsDirect.class.getClassLoader());
+        List<ClassLoader> loaders = Collections.singletonList(loader);
+        ClassArchive archive = ClassArchive.of(loaders);
+        Assert.assertSame(archive, ClassArchive.of(new ArrayList<>(loaders)));
+        Assert.assertNotSame(archive, ClassArchive.of(Arrays.asList(loader, ClassLoader.getSystemClassLoader())));
+        byte[] b = archive.get("TestsDirect", name -> new byte[]{1, 2, 3});
+        Assert.assertArrayEquals(b, archive.get("TestsDirect", name -> {
+            throw new AssertionError("Bytecode should have been read from the archive");
+        }));
+        Assert.assertNull(archive.get("Missing", name -> null));
+        //The archive is deleted once both users have released it, but the bytecode it already holds can still be read.
+        archive.release();
+        archive.release();
+        Assert.assertNotSame(archive, ClassArchive.of(loaders));
+        Assert.assertArrayEquals(b, archive.get("TestsDirect", name -> {
+            throw new AssertionError("Bytecode should have been read from the archive");
+        }));
+    }
+
+    @Test
+    public void testCompactCodec() throws Exception {
+        List<Object> shared = new ArrayList<>(Arrays.asList(1, 2L, "three"));
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("shared", shared);
+        map.put("ints", new int[]{1, 2, 3});
+        Object[] value = {null, true, (byte) 4, (short) 5, 'c', 6.0f, 7.0, new double[2000], new StringBuilder("8"),
+                String.join("", Collections.nCopies(30000, "\u00e9")), shared, map, new HashSet<>(Arrays.asList("a", "b"))};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            new CompactCodec().write(out, value);
+        }
+        Object[] read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (Object[]) new CompactCodec().read(in);
+        }
+        Assert.assertEquals(Arrays.asList(value).subList(0, 7), Arrays.asList(read).subList(0, 7));
+        Assert.assertArrayEquals((double[]) value[7], (double[]) read[7], 0);
+        Assert.assertEquals("8", read[8].toString());
+        Assert.assertEquals(value[9], read[9]);
+        Assert.assertEquals(shared, read[10]);
+        //The list appears twice, and should still be a single list once read.
+        Assert.assertSame(read[10], ((Map<?, ?>) read[11]).get("shared"));
+        Assert.assertArrayEquals(new int[]{1, 2, 3}, (int[]) ((Map<?, ?>) read[11]).get("ints"));
+        Assert.assertEquals(value[12], read[12]);
+    }
+
+    @Test
+    public void testCompactCodecLengths() throws Exception {
+        Object[] large = new Object[5000];
+        Arrays.fill(large, 1);
+        Object[] value = {large, new byte[100000], new ArrayList<>(Arrays.asList(large))};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            new CompactCodec().write(out, value);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            Object[] read = (Object[]) new CompactCodec().read(in);
+            Assert.assertArrayEquals(large, (Object[]) read[0]);
+            Assert.assertArrayEquals((byte[]) value[1], (byte[]) read[1]);
+            Assert.assertEquals(value[2], read[2]);
+        }
+        //Made up lengths fail once the data runs out, without allocating what they ask for.
+        for (int tag : new int[]{12, 13, 17, 21, 22}) {
+            bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeByte(tag);
+                out.writeInt(Integer.MAX_VALUE);
+                out.write(new byte[16]);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                new CompactCodec().read(in);
+                Assert.fail("A made up length of value type " + tag + " was read");
+            } catch (IOException e) {
+                //Expected, either the length is too long to have been written or the data ran out.
+            }
+        }
+    }
+
+    @Test
+    public void testBytecodeCacheBound() throws Exception {
+        //A host that sends a megabyte of bytecode for every class asked for, none of which is ever defined.
+        ProcessClassloader.setByteCodeSupplier(new IClassSupplier() {
+            @Override
+            public byte[] getByteCode(String clazz) {
+                return new byte[1 << 20];
+            }
+
+            @Override
+            public byte[] getPackageByteCode(String clazz) {
+                return getByteCodes(new String[]{clazz});
+            }
+
+            @Override
+            public byte[] getByteCodes(String[] classes) {
+                Map<String, byte[]> bytecode = new HashMap<>();
+                for (String clazz : classes) bytecode.put(clazz, getByteCode(clazz));
+                return ClassBundle.pack(bytecode);
+            }
+        });
+        try {
+            List<String> classes = new ArrayList<>();
+            for (int i = 0; i < 64; i++) classes.add("unused.Class" + i);
+            ProcessClassloader.prefetch(classes);
+            long cached = ProcessClassloader.getCachedBytes();
+            Assert.assertTrue("Cached " + cached + " bytes", cached > 0 && cached <= 8 << 20);
+        } finally {
+            ProcessClassloader.setByteCodeSupplier(null);
+        }
+    }
+
+    @Test
+    public void testObjectTable() throws Exception {
+        ProcessMain main = new ProcessMain();
+        List<RemoteObject<Integer>> objects = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            int value = i;
+            objects.add(main.call(() -> value));
+        }
+        for (int i = 0; i < objects.size(); i += 2) {
+            main.remove(objects.get(i));
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            if (i % 2 == 0) {
+                try {
+                    main.get(objects.get(i));
+                    Assert.fail("Removed object " + i + " was found");
+                } catch (UnknownObjectException e) {
+                    //Expected, the object was removed.
+                }
+            } else {
+                Assert.assertEquals(i, main.get(objects.get(i)), 0);
+            }
+        }
+    }
+
+    @Test(expected = UnknownObjectException.class)
+    public void testLeaseExpiry() throws Exception {
+        ProcessMain main = new ProcessMain();
+        RemoteObject<String> object = main.call(() -> "leased");
+        main.renewLease(60000);
+        Assert.assertEquals("leased", main.get(object));
+        main.renewLease(100);
+        Thread.sleep(2000);
+        main.get(object);
+    }
+
+    @Test
+    public void testRemoteBufferPath() throws Exception {
+        byte[] sent;
+        try (RemoteBuffer buffer = RemoteBuffer.allocate(16)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(buffer);
+            }
+            sent = bytes.toByteArray();
+            Assert.assertEquals(16, ((RemoteBuffer) read(sent)).size());
+            //A path that was not made by allocate is not mapped, even when it is in the same directory.
+            String stream = new String(sent, "ISO-8859-1");
+            int suffix = stream.indexOf(".buffer");
+            byte[] forged = sent.clone();
+            forged[suffix + 1] = 'c';
+            try {
+                read(forged);
+                Assert.fail("A forged path was mapped");
+            } catch (InvalidObjectException e) {
+                //Expected, the name does not match a buffer.
+            }
+        }
+        try {
+            read(sent);
+            Assert.fail("A released buffer was mapped");
+        } catch (InvalidObjectException e) {
+            //Expected, the file was deleted when the buffer was released.
+        }
+    }
+
+    private static Object read(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    public void testIsJavaClass() {
+        Assert.assertTrue(Utils.isJavaClass("java.lang.String"));
+        Assert.assertTrue(Utils.isJavaClass("java.util.concurrent.ConcurrentHashMap"));
+        Assert.assertTrue(Utils.isJavaClass("javax.swing.JFrame"));
+        //Being in a JDK package is not enough, the class has to exist as well.
+        Assert.assertFalse(Utils.isJavaClass("javax.swing.NotAClass"));
+        Assert.assertFalse(Utils.isJavaClass("java.lang.NotAClass"));
+        Assert.assertFalse(Utils.isJavaClass("TestsDirect"));
+        Assert.assertFalse(Utils.isJavaClass("safeNativeCode.utils.Utils"));
+        Assert.assertFalse(Utils.isJavaClass("org.junit.Assert"));
+        BiPredicate<URL, String> test = Utils.getIsJavaClass();
+        try {
+            Utils.setIsJavaClass((classLoc, name) -> name.equals("TestsDirect") || test.test(classLoc, name));
+            Assert.assertTrue(Utils.isJavaClass("TestsDirect"));
+            Assert.assertTrue(Utils.isJavaClass("java.lang.String"));
+        } finally {
+            Utils.setIsJavaClass(test);
+        }
+        Assert.assertFalse(Utils.isJavaClass("TestsDirect"));
+    }
+
+    @Test
+    public void timeIsJavaClass() {
+        String[] names = {"java.lang.String", "java.util.HashMap", "javax.swing.JFrame", "TestsDirect", "org.junit.Assert", "safeNativeCode.utils.Utils"};
+        int testCount = 100000;
+        BiPredicate<URL, String> test = Utils.getIsJavaClass();
+        for (int round = 0; round < 3; round++) {
+            //The lookup every call used to make, before decisions were cached.
+            Instant start = Instant.now();
+            for (int i = 0; i < testCount / 10; i++) {
+                String name = names[i % names.length];
+                test.test(ClassLoader.getSystemClassLoader().getResource(name.replace(".", File.separator) + ".class"), name);
+            }
+            Instant middle = Instant.now();
+            for (int i = 0; i < testCount; i++) {
+                Utils.isJavaClass(names[i % names.length]);
+            }
+            Instant end = Instant.now();
+            System.out.println("Time taken per lookup: " + Duration.between(start, middle).toNanos() / (testCount / 10f) + "ns, cached: " + Duration.between(middle, end).toNanos() / (float) testCount + "ns");
+        }
+    }
+
     @Test
     public void timeExecution() {
         int testCount = 10;